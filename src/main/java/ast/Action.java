@@ -41,7 +41,7 @@ public class Action extends Command {
 		if (m.equals(MutationFactory.getTransform())) {
 			if(tt == TokenType.SERVE || tt == TokenType.TAG)
 				return false;
-			this.transform();
+			this.transform(new Random());
 			return true;
 		}
 		
@@ -49,8 +49,7 @@ public class Action extends Command {
 	}
 	
 	@Override
-	public Action generateSubtree() {
-		Random r = new Random();
+	public Action generateSubtree(Random r) {
 		TokenType newAct;
 		
 		switch(r.nextInt(11)) {
@@ -96,8 +95,7 @@ public class Action extends Command {
 	/**
 	 * Sets the TokeenType to another valid type with equal probability
 	 */
-	public void transform() {
-		Random r = new Random();
+	public void transform(Random r) {
 		TokenType newAct;
 		switch(r.nextInt(10)) {
 		case 0:
@@ -132,6 +130,7 @@ public class Action extends Command {
 		}
 		
 		tt = newAct;
+		hashChanged(this);
 	}
 
 	@Override
@@ -16,6 +16,8 @@ public abstract class BinaryNode implements Node {
 	TokenType tt;
 	BinaryNode left;
 	BinaryNode right;
+	int size; // cached size of the subtree rooted here, 0 if not yet known
+	long hash; // cached structural hash of the subtree rooted here, 0 if not yet known
 
 	/**
 	 * Constructs a binary node with left and right children and of given type
@@ -49,10 +51,12 @@ public abstract class BinaryNode implements Node {
 	
 	/**
 	 * Creates a subtree of the same type as the current node and returns it.
+	 * @param r
+	 * 			Source of randomness
 	 * @return
 	 * 			Head node of the generated subtree
 	 */
-	public abstract BinaryNode generateSubtree();
+	public abstract BinaryNode generateSubtree(Random r);
 	
 	/**
 	 * Gets a subtree of the type of the current node, in the entire program,
@@ -70,7 +74,7 @@ public abstract class BinaryNode implements Node {
 		Program p = ((Rule) temp).getParent();
 		Node n = p.findSubtree(this);
 		if(n == null)
-			n = this.generateSubtree();
+			n = this.generateSubtree(new Random());
 		
 		return n;
 	}
@@ -133,12 +137,12 @@ public abstract class BinaryNode implements Node {
 		if (m.equals(MutationFactory.getReplace())) {
 			if (new Random().nextInt(2) == 0) {
 				if (left != null) {
-					left = (BinaryNode) left.getSubtree();
+					setLeft((BinaryNode) left.getSubtree());
 					return true;
 				}
 			} else {
 				if (right != null) {
-					right = (BinaryNode) right.getSubtree();
+					setRight((BinaryNode) right.getSubtree());
 					return true;
 				}
 			}
@@ -148,15 +152,139 @@ public abstract class BinaryNode implements Node {
 	
 	@Override
 	public int size() {
+		if (size != 0)
+			return size;
+
 		int size = 1;
 		if (left != null)
 			size = size + left.size();
 		if (right != null)
 			size = size + right.size();
 
+		this.size = size;
 		return size;
 	}
 
+	/**
+	 * Forgets the cached sizes and hashes of node {@code n} and all of its
+	 * ancestors, after the subtree rooted at {@code n} has changed shape
+	 * @param n
+	 * 			Node whose subtree has changed
+	 */
+	static void sizeChanged(Node n) {
+		while (n != null) {
+			if (n instanceof BinaryNode) {
+				((BinaryNode) n).size = 0;
+				((BinaryNode) n).hash = 0;
+				n = ((BinaryNode) n).parent;
+			} else if (n instanceof Rule) {
+				((Rule) n).size = 0;
+				((Rule) n).hash = 0;
+				n = ((Rule) n).parent;
+			} else {
+				if (n instanceof ProgramImpl)
+					((ProgramImpl) n).rulesChanged();
+				n = null;
+			}
+		}
+	}
+
+	/**
+	 * Forgets the cached hashes of node {@code n} and all of its ancestors,
+	 * after a token or value in the subtree rooted at {@code n} has changed
+	 * without changing its shape
+	 * @param n
+	 * 			Node whose subtree has changed
+	 */
+	static void hashChanged(Node n) {
+		while (n instanceof BinaryNode) {
+			((BinaryNode) n).hash = 0;
+			n = ((BinaryNode) n).parent;
+		}
+		if (n instanceof Rule) {
+			((Rule) n).hash = 0;
+			n = ((Rule) n).parent;
+		}
+		if (n instanceof ProgramImpl)
+			((ProgramImpl) n).hashChanged();
+	}
+
+	@Override
+	public long structuralHash() {
+		if (hash != 0)
+			return hash;
+
+		long h = label();
+		h = combine(h, left == null ? 0 : left.structuralHash());
+		h = combine(h, right == null ? 0 : right.structuralHash());
+		hash = h == 0 ? 1 : h;
+		return hash;
+	}
+
+	@Override
+	public boolean sameAs(Node n) {
+		if (n == this)
+			return true;
+		if (n == null || n.getClass() != getClass() || n.structuralHash() != structuralHash())
+			return false;
+		BinaryNode b = (BinaryNode) n;
+		return sameLabel(b) && same(left, b.left) && same(right, b.right);
+	}
+
+	/**
+	 * Returns whether this node and {@code n}, of the same class, are told
+	 * apart by nothing but their children, as with equal {@link #label()}s
+	 * @param n
+	 * 			Node to compare with
+	 * @return
+	 * 			Whether the nodes are equal apart from their children
+	 */
+	boolean sameLabel(BinaryNode n) {
+		return tt == n.tt;
+	}
+
+	/**
+	 * Returns whether the ASTs rooted at {@code a} and {@code b}, either of
+	 * which may be null, are structurally equal
+	 * @param a
+	 * 			First AST
+	 * @param b
+	 * 			Second AST
+	 * @return
+	 * 			Whether both are null or they are structurally equal
+	 */
+	static boolean same(Node a, Node b) {
+		return a == null ? b == null : a.sameAs(b);
+	}
+
+	/**
+	 * Returns a hash of what distinguishes this node from other nodes with the
+	 * same children: its class, its token type and anything else that changes
+	 * how it is printed
+	 * @return
+	 * 			The hash of this node without its children
+	 */
+	long label() {
+		return combine(getClass().getName().hashCode(), tt.ordinal());
+	}
+
+	/**
+	 * Combines hash {@code h} with value {@code v}, such that combining the same
+	 * values in a different order gives a different hash
+	 * @param h
+	 * 			Hash to extend
+	 * @param v
+	 * 			Value to add to the hash
+	 * @return
+	 * 			The combined hash
+	 */
+	static long combine(long h, long v) {
+		long z = h * 31 + v + 0x9E3779B97F4A7C15L;
+		z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+		z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+		return z ^ (z >>> 31);
+	}
+
 	@Override
 	public Node nodeAt(int index) {
 		if (index == 0)
@@ -222,6 +350,9 @@ public abstract class BinaryNode implements Node {
 	 */
 	public void setLeft(BinaryNode child) {
 		left = child;
+		if (child != null)
+			child.setParent(this);
+		sizeChanged(this);
 	}
 
 	/**
@@ -231,6 +362,9 @@ public abstract class BinaryNode implements Node {
 	 */
 	public void setRight(BinaryNode child) {
 		right = child;
+		if (child != null)
+			child.setParent(this);
+		sizeChanged(this);
 	}
 	
 	/**
@@ -265,6 +399,7 @@ public abstract class BinaryNode implements Node {
 			BinaryNode temp = right;
 			right = left;
 			left = temp;
+			hashChanged(this);
 			return true;
 		}
 		
@@ -1,5 +1,7 @@
 package ast;
 
+import java.util.Random;
+
 import interpret.Interpreter;
 import interpret.Outcome;
 import parse.TokenType;
@@ -9,7 +11,7 @@ import parse.TokenType;
  */
 public class ConditionNode extends BinaryNode implements Condition {
 
-	private boolean braces;
+	boolean braces; // whether the condition is printed in braces
 
 	/**
 	 * Create an AST representation of l op r.
@@ -31,6 +33,17 @@ public class ConditionNode extends BinaryNode implements Condition {
 	 */
 	public void addBraces() {
 		braces = true;
+		hashChanged(this);
+	}
+
+	@Override
+	long label() {
+		return combine(super.label(), braces ? 1 : 0);
+	}
+
+	@Override
+	boolean sameLabel(BinaryNode n) {
+		return super.sameLabel(n) && braces == ((ConditionNode) n).braces;
 	}
 
 	@Override
@@ -74,10 +87,10 @@ public class ConditionNode extends BinaryNode implements Condition {
 	}
 
 	@Override
-	public ConditionNode generateSubtree() {
-		if (left.hashCode() / 4 % 2 == 0)
-			return (ConditionNode) left.generateSubtree();
-		return (ConditionNode) right.generateSubtree();
+	public ConditionNode generateSubtree(Random r) {
+		if (r.nextInt(2) == 0)
+			return (ConditionNode) left.generateSubtree(r);
+		return (ConditionNode) right.generateSubtree(r);
 	}
 
 	@Override
@@ -1,5 +1,7 @@
 package ast;
 
+import java.util.Random;
+
 import parse.TokenType;
 
 /**
@@ -23,7 +25,9 @@ public class ConjunctionNode extends ConditionNode {
 	
 	@Override
 	public ConjunctionNode clone() {
-		return new ConjunctionNode(left.clone(), tt, right.clone());
+		ConjunctionNode newConj = new ConjunctionNode(left.clone(), tt, right.clone());
+		newConj.braces = braces;
+		return newConj;
 	}
 	
 	@Override
@@ -49,9 +53,9 @@ public class ConjunctionNode extends ConditionNode {
 	}
 	
 	@Override
-	public ConjunctionNode generateSubtree() {
-		if (left.hashCode() / 4 % 2 == 0)
-			return (ConjunctionNode) left.generateSubtree();
-		return (ConjunctionNode) right.generateSubtree();
+	public ConjunctionNode generateSubtree(Random r) {
+		if (r.nextInt(2) == 0)
+			return (ConjunctionNode) left.generateSubtree(r);
+		return (ConjunctionNode) right.generateSubtree(r);
 	}
 }
@@ -11,7 +11,7 @@ import parse.TokenType;
  * A representation of an expression.
  */
 public class Expression extends BinaryNode implements Expr {
-	private boolean paren;
+	boolean paren; // whether the expression is printed in parentheses
 
 	/**
 	 * Constructs an Expression with a left and right child and with the 
@@ -34,6 +34,17 @@ public class Expression extends BinaryNode implements Expr {
 	 */
 	public void addParen() {
 		paren = true;
+		hashChanged(this);
+	}
+
+	@Override
+	long label() {
+		return combine(super.label(), paren ? 1 : 0);
+	}
+
+	@Override
+	boolean sameLabel(BinaryNode n) {
+		return super.sameLabel(n) && paren == ((Expression) n).paren;
 	}
 
 	@Override
@@ -54,7 +65,7 @@ public class Expression extends BinaryNode implements Expr {
 		if (super.mutateNode(m))
 			return true;
 		if (m.equals(MutationFactory.getTransform())) {
-			this.transform();
+			this.transform(new Random());
 			return true;
 		}
 		if (m.equals(MutationFactory.getInsert())) {
@@ -74,21 +85,21 @@ public class Expression extends BinaryNode implements Expr {
 	}
 
 	@Override
-	public Expression generateSubtree() {
-		if (left.hashCode() / 4 % 2 == 0)
-			return (Expression) left.generateSubtree();
-		return (Expression) right.generateSubtree();
+	public Expression generateSubtree(Random r) {
+		if (r.nextInt(2) == 0)
+			return (Expression) left.generateSubtree(r);
+		return (Expression) right.generateSubtree(r);
 	}
 
 	/**
 	 * Sets the token type to PLUS or MINUS with equal probability
 	 */
-	public void transform() {
-		Random r = new Random();
+	public void transform(Random r) {
 		if (r.nextInt(2) == 0)
 			tt = TokenType.PLUS;
 		else
 			tt = TokenType.MINUS;
+		hashChanged(this);
 	}
 
 	@Override
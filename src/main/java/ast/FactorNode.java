@@ -24,9 +24,9 @@ public class FactorNode extends TermNode {
 	@Override
 	public FactorNode clone() {
 		// Left child of factor node is always null
-		if (right != null)
-			return new FactorNode(null, tt, right.clone());
-		return new FactorNode(null, tt, null);
+		FactorNode newFactor = new FactorNode(null, tt, right == null ? null : right.clone());
+		newFactor.paren = paren;
+		return newFactor;
 	}
 	
 	@Override
@@ -39,7 +39,7 @@ public class FactorNode extends TermNode {
 		if (super.mutateNode(m))
 			return true;
 		if (m.equals(MutationFactory.getTransform())) {
-			this.transform();
+			this.transform(new Random());
 			return true;
 		}
 		if (m.equals(MutationFactory.getInsert())) {
@@ -56,10 +56,9 @@ public class FactorNode extends TermNode {
 	}
 
 	@Override
-	public FactorNode generateSubtree() {
-		Random r = new Random();
+	public FactorNode generateSubtree(Random r) {
 		if (right instanceof SensorNode)
-			return (SensorNode) right.generateSubtree();
+			return (SensorNode) right.generateSubtree(r);
 		return new NumNode(r.nextInt(17) + "");
 	}
 }
@@ -36,8 +36,8 @@ public class MemNode extends FactorNode{
 	}
 	
 	@Override
-	public MemNode generateSubtree() {
-		return new MemNode(new NumNode(new Random().nextInt(17) + ""));
+	public MemNode generateSubtree(Random r) {
+		return new MemNode(new NumNode(r.nextInt(17) + ""));
 	}
 	
 	@Override
@@ -0,0 +1,352 @@
+package ast;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Random;
+
+import parse.TokenCategory;
+import parse.TokenType;
+
+/**
+ * An index of the places a program can be mutated, used to mutate copies of
+ * the program by choosing a valid pair of a node and a kind of mutation,
+ * instead of choosing a node and retrying until a mutation happens to succeed
+ * on it. Every valid pair is as likely as any other, as with retrying, so
+ * programs evolve as they did before the index.
+ * <p>
+ * The index is built in a single traversal: the position of every node is
+ * filed under each kind of mutation that can be done on it, and every subtree
+ * is filed under the kind of node it can replace. Choosing the mutation, its
+ * target and any subtree to copy into the program then takes constant time,
+ * and every chosen mutation succeeds. The index belongs to one program and is
+ * dropped when the shape of that program changes.
+ * <p>
+ * A mutated copy shares every rule of the original program except the rule
+ * containing the target, which is copied before it is changed.
+ * <p>
+ * Kinds of node are the categories of their token types, or the token type
+ * itself for tokens in {@link TokenCategory#OTHER}, matching
+ * {@link BinaryNode#replaceable(Node)}.
+ */
+public class MutationEngine {
+
+	// Kinds of mutation, in the order of MutationFactory
+	private static final int REMOVE = 0;
+	private static final int SWAP = 1;
+	private static final int REPLACE = 2;
+	private static final int TRANSFORM = 3;
+	private static final int INSERT = 4;
+	private static final int DUPLICATE = 5;
+	private static final int MUTATIONS = 6;
+
+	// Parts of a target a mutation applies to
+	private static final int WHOLE = 0;
+	private static final int LEFT = 1;
+	private static final int RIGHT = 2;
+	private static final int EITHER = 3; // either child, or the condition or command of a rule, chosen when mutating
+	private static final int PART_BITS = 3;
+
+	private static final int CATEGORIES = TokenCategory.values().length;
+	private static final TokenType[] MULOPS = { TokenType.MUL, TokenType.DIV, TokenType.MOD };
+
+	private final ProgramImpl source;
+	private final int[][] targets; // position and part of the valid targets of each mutation
+	private final int[] counts; // number of valid targets of each mutation
+	private final ArrayList<ArrayList<BinaryNode>> subtrees; // subtrees of the source by kind
+	private int position; // position of the next node to index
+
+	/**
+	 * Indexes program {@code p}
+	 *
+	 * @param p
+	 *            Program to index
+	 */
+	MutationEngine(ProgramImpl p) {
+		source = p;
+		targets = new int[MUTATIONS][16];
+		counts = new int[MUTATIONS];
+		subtrees = new ArrayList<ArrayList<BinaryNode>>();
+		for (int i = 0; i < CATEGORIES + TokenType.values().length; i++)
+			subtrees.add(null);
+
+		ArrayList<Rule> rules = p.getRules();
+		if (rules.size() > 0) {
+			target(REMOVE, WHOLE);
+			target(REPLACE, WHOLE);
+		}
+		if (rules.size() > 1)
+			target(SWAP, WHOLE);
+		target(DUPLICATE, WHOLE);
+
+		position = 1;
+		for (Rule rule : rules)
+			index(rule);
+	}
+
+	/**
+	 * Returns a copy of the program with a single random mutation
+	 *
+	 * @param r
+	 *            Source of randomness
+	 * @return The mutated copy
+	 */
+	public Program mutate(Random r) {
+		int total = 0;
+		for (int c : counts)
+			total += c;
+
+		// One draw over the targets of every kind, so each is equally likely
+		int k = r.nextInt(total);
+		int kind = 0;
+		while (k >= counts[kind])
+			k -= counts[kind++];
+
+		int t = targets[kind][k];
+		int index = t >>> PART_BITS;
+		int part = t & ((1 << PART_BITS) - 1);
+
+		// The copy shares all rules but the one that is mutated
+		ProgramImpl copy = source.shallowCopy();
+		if (index == 0) {
+			mutate(kind, copy, r);
+			return copy;
+		}
+
+		copy.unshare(copy.ruleAt(index));
+		Node n = copy.nodeAt(index);
+		if (n instanceof Rule)
+			mutate(kind, (Rule) n, (Rule) source.nodeAt(index), part, r);
+		else
+			mutate(kind, (BinaryNode) n, (BinaryNode) source.nodeAt(index), part, r);
+		return copy;
+	}
+
+	/**
+	 * Returns the index of the kind of {@code n} in {@code subtrees}
+	 */
+	private static int kind(BinaryNode n) {
+		TokenCategory c = n.tt.category();
+		return c == TokenCategory.OTHER ? CATEGORIES + n.tt.ordinal() : c.ordinal();
+	}
+
+	/**
+	 * Records {@code part} of the node at the current position as a valid
+	 * target of mutation {@code kind}
+	 */
+	private void target(int kind, int part) {
+		if (counts[kind] == targets[kind].length)
+			targets[kind] = Arrays.copyOf(targets[kind], counts[kind] * 2);
+		targets[kind][counts[kind]++] = position << PART_BITS | part;
+	}
+
+	private void index(Rule r) {
+		if (r.updates.size() > 0) {
+			target(REMOVE, WHOLE);
+			target(DUPLICATE, WHOLE);
+		}
+		target(REPLACE, EITHER);
+		position++;
+
+		index(r.condition);
+		for (Update u : r.updates)
+			index(u);
+		index(r.command);
+	}
+
+	private void index(BinaryNode n) {
+		ArrayList<BinaryNode> same = subtrees.get(kind(n));
+		if (same == null) {
+			same = new ArrayList<BinaryNode>();
+			subtrees.set(kind(n), same);
+		}
+		same.add(n);
+
+		if (isOperator(n) || isJunction(n) || isNegation(n))
+			target(REMOVE, WHOLE);
+		if (isOperator(n) || isJunction(n) || n instanceof RelationNode || n instanceof Update && n.right instanceof MemNode)
+			target(SWAP, WHOLE);
+		if (n.left != null && n.right != null)
+			target(REPLACE, EITHER);
+		else if (n.left != null)
+			target(REPLACE, LEFT);
+		else if (n.right != null)
+			target(REPLACE, RIGHT);
+		if (isTransformable(n))
+			target(TRANSFORM, WHOLE);
+		if (isJunction(n) || isOperator(n) || n instanceof FactorNode && !(n.parent instanceof Update && n == ((Update) n.parent).left))
+			target(INSERT, WHOLE);
+		position++;
+
+		if (n.left != null)
+			index(n.left);
+		if (n.right != null)
+			index(n.right);
+	}
+
+	/**
+	 * Returns whether {@code n} is an {@code or} or {@code and} of two conditions
+	 */
+	private static boolean isJunction(BinaryNode n) {
+		return n instanceof ConditionNode && !(n instanceof RelationNode);
+	}
+
+	/**
+	 * Returns whether {@code n} is an arithmetic operator applied to two
+	 * expressions
+	 */
+	private static boolean isOperator(BinaryNode n) {
+		return (n.getClass() == Expression.class || n.getClass() == TermNode.class)
+				&& (n.tt.category() == TokenCategory.ADDOP || n.tt.category() == TokenCategory.MULOP);
+	}
+
+	/**
+	 * Returns whether {@code n} is the negation of an expression
+	 */
+	private static boolean isNegation(BinaryNode n) {
+		return n.getClass() == FactorNode.class;
+	}
+
+	private static boolean isTransformable(BinaryNode n) {
+		if (n instanceof NumNode || n instanceof RelationNode || isOperator(n))
+			return true;
+		if (n instanceof SensorNode)
+			return n.tt != TokenType.SMELL;
+		if (n instanceof Action)
+			return n.right == null;
+		return false;
+	}
+
+	/**
+	 * Returns a copy of a random subtree of the source that can replace
+	 * {@code n}, other than {@code original}, or a generated subtree if there
+	 * is none
+	 */
+	private BinaryNode donor(BinaryNode n, BinaryNode original, Random r) {
+		ArrayList<BinaryNode> same = subtrees.get(kind(n));
+		if (same == null || same.size() < 2)
+			return n.generateSubtree(r);
+
+		int i = r.nextInt(same.size());
+		if (same.get(i) == original)
+			i = (i + 1) % same.size();
+		return same.get(i).clone();
+	}
+
+	/**
+	 * Puts {@code n} in the place of {@code old}, a child of {@code parent}
+	 */
+	private static void replace(Node parent, BinaryNode old, BinaryNode n) {
+		if (parent instanceof Rule) {
+			Rule r = (Rule) parent;
+			if (old == r.condition)
+				r.addCond((ConditionNode) n);
+			else
+				r.addComm((Command) n);
+		} else if (old == ((BinaryNode) parent).left)
+			((BinaryNode) parent).setLeft(n);
+		else
+			((BinaryNode) parent).setRight(n);
+	}
+
+	/**
+	 * Does mutation {@code kind} on the list of rules of program {@code p}
+	 */
+	private void mutate(int kind, ProgramImpl p, Random r) {
+		ArrayList<Rule> sourceRules = source.getRules();
+		switch (kind) {
+		case REMOVE:
+			p.removeRule(r);
+			break;
+		case SWAP:
+			p.swapRules(r);
+			break;
+		case REPLACE:
+			p.getRules().remove(r.nextInt(sourceRules.size()));
+			p.add(sourceRules.get(r.nextInt(sourceRules.size())).clone());
+			break;
+		default: // DUPLICATE
+			if (sourceRules.isEmpty())
+				p.mutateNode(MutationFactory.getDuplicate(), r);
+			else
+				p.add(sourceRules.get(r.nextInt(sourceRules.size())).clone());
+		}
+	}
+
+	/**
+	 * Does mutation {@code kind} on {@code part} of rule {@code n}, the copy of
+	 * rule {@code original}
+	 */
+	private void mutate(int kind, Rule n, Rule original, int part, Random r) {
+		switch (kind) {
+		case REMOVE:
+			n.removeUpdate(r);
+			break;
+		case REPLACE:
+			if (r.nextInt(2) == 0) // part is EITHER
+				n.addCond((ConditionNode) donor(n.condition, original.condition, r));
+			else
+				n.addComm((Command) donor(n.command, original.command, r));
+			break;
+		default: // DUPLICATE
+			n.add((Update) donor(n.updates.get(0), null, r));
+		}
+	}
+
+	/**
+	 * Does mutation {@code kind} on {@code part} of node {@code n}, the copy of
+	 * node {@code original}
+	 */
+	private void mutate(int kind, BinaryNode n, BinaryNode original, int part, Random r) {
+		switch (kind) {
+		case REMOVE:
+			// The node is replaced by one of its children
+			replace(n.parent, n, n.left == null || r.nextInt(2) == 0 ? n.right : n.left);
+			break;
+		case SWAP:
+			n.switchChildren();
+			break;
+		case REPLACE:
+			if (part == LEFT || part == EITHER && r.nextInt(2) == 0)
+				n.setLeft(donor(n.left, original.left, r));
+			else
+				n.setRight(donor(n.right, original.right, r));
+			break;
+		case TRANSFORM:
+			transform(n, r);
+			break;
+		default: // INSERT
+			Node parent = n.parent; // the new node becomes the parent of n
+			BinaryNode inserted;
+			if (n instanceof FactorNode)
+				inserted = new FactorNode(null, TokenType.MINUS, n);
+			else if (n.getClass() == ConditionNode.class)
+				inserted = new ConditionNode((ConditionNode) n, n.tt, donor(n, original, r));
+			else if (n instanceof ConditionNode)
+				inserted = new ConjunctionNode((ConditionNode) n, n.tt, donor(n, original, r));
+			else
+				inserted = new Expression(donor(n, original, r), n.tt, n);
+			replace(parent, n, inserted);
+		}
+	}
+
+	/**
+	 * Changes the operator, sensor, action or value of node {@code n}
+	 */
+	private static void transform(BinaryNode n, Random r) {
+		if (n instanceof NumNode)
+			((NumNode) n).transform(r);
+		else if (n instanceof RelationNode)
+			((RelationNode) n).transform(r);
+		else if (n instanceof SensorNode)
+			((SensorNode) n).transform(r);
+		else if (n instanceof Action)
+			((Action) n).transform(r);
+		else {
+			if (n.tt.category() == TokenCategory.ADDOP)
+				n.tt = r.nextInt(2) == 0 ? TokenType.PLUS : TokenType.MINUS;
+			else
+				n.tt = MULOPS[r.nextInt(MULOPS.length)];
+			BinaryNode.hashChanged(n);
+		}
+	}
+}
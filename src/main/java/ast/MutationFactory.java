@@ -2,30 +2,37 @@ package ast;
 
 /**
  * A factory that produces the public static Mutation objects corresponding to
- * each mutation
+ * each mutation. Mutations are stateless, so each is a single shared instance.
  */
 public class MutationFactory {
+   private static final Mutation REMOVE = new RemoveMutation();
+   private static final Mutation SWAP = new SwapMutation();
+   private static final Mutation REPLACE = new ReplaceMutation();
+   private static final Mutation TRANSFORM = new TransformMutation();
+   private static final Mutation INSERT = new InsertMutation();
+   private static final Mutation DUPLICATE = new DuplicateMutation();
+
    public static Mutation getRemove() {
-      return new RemoveMutation();
+      return REMOVE;
    }
 
    public static Mutation getSwap() {
-      return new SwapMutation();
+      return SWAP;
    }
 
    public static Mutation getReplace() {
-	   return new ReplaceMutation();
+	   return REPLACE;
    }
 
    public static Mutation getTransform() {
-	   return new TransformMutation();
+	   return TRANSFORM;
    }
 
    public static Mutation getInsert() {
-	   return new InsertMutation();
+	   return INSERT;
    }
 
    public static Mutation getDuplicate() {
-	   return new DuplicateMutation();
+	   return DUPLICATE;
    }
 }
@@ -15,6 +15,29 @@ public interface Node {
     */
    int size();
 
+   /**
+    * Returns a hash of the AST rooted at this node, computed bottom-up from the
+    * hashes of its children as in a Merkle tree. ASTs that pretty-print the
+    * same way have the same hash, and the hash is cached in the nodes until the
+    * AST changes, so comparing two ASTs by their hashes takes constant time.
+    * 
+    * @return The structural hash of the AST rooted at this node
+    */
+   long structuralHash();
+
+   /**
+    * Returns whether the AST rooted at this node is structurally equal to the
+    * one rooted at {@code n}, that is, whether they pretty-print the same way.
+    * ASTs with different hashes are told apart in constant time, and others
+    * are compared node by node, so unlike their hashes this never takes
+    * different ASTs for equal ones.
+    * 
+    * @param n
+    *           AST to compare with, possibly null
+    * @return Whether the two ASTs are structurally equal
+    */
+   boolean sameAs(Node n);
+
    /**
     * Returns the node at {@code index} in the AST rooted at this node. Indices
     * are defined such that:<br>
@@ -42,7 +42,7 @@ public class NumNode extends FactorNode {
 		if (super.mutateNode(m))
 			return true;
 		if (m.equals(MutationFactory.getTransform())) {
-			this.transform();
+			this.transform(new Random());
 			return true;
 		}
 		
@@ -57,13 +57,23 @@ public class NumNode extends FactorNode {
 	/**
 	 * Adjusts the number value to another valid value
 	 */
-	public void transform() {
-		Random r = new Random();
+	public void transform(Random r) {
 		int adjust = java.lang.Integer.MAX_VALUE/r.nextInt();
 		
 		if(r.nextInt(2) == 0)
 			num = (Integer.parseInt(num) + adjust) + "";
 		else
 			num = (Integer.parseInt(num) - adjust) + "";
+		hashChanged(this);
+	}
+
+	@Override
+	long label() {
+		return combine(super.label(), num.hashCode());
+	}
+
+	@Override
+	boolean sameLabel(BinaryNode n) {
+		return super.sameLabel(n) && num.equals(((NumNode) n).num);
 	}
 }
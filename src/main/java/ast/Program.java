@@ -1,6 +1,7 @@
 package ast;
 
 import java.util.ArrayList;
+import java.util.Random;
 
 /**
  * An abstraction of a critter program.
@@ -12,6 +13,16 @@ public interface Program extends Node {
     * @return The root of the mutated AST
     */
    Program mutate();
+
+   /**
+    * Mutates this program with a single mutation, making its random choices
+    * with {@code r}
+    * 
+    * @param r
+    *           Source of randomness
+    * @return The root of the mutated AST
+    */
+   Program mutate(Random r);
    
    /**
     * Clones this program
@@ -7,10 +7,25 @@ import parse.TokenType;
 
 /**
  * A data structure representing a critter program.
+ * <p>
+ * Sizes and structural hashes of subtrees are cached in the nodes and forgotten along the path to
+ * the root whenever a subtree changes shape, and the index of the first node of
+ * every rule is kept in a table, so {@link #size()} is constant time and
+ * {@link #nodeAt(int)} takes time proportional to the depth of the node once
+ * the caches are filled. {@link #mutate()} uses a {@link MutationEngine} that
+ * is built on first use and kept until the program changes shape. Mutated
+ * copies share every rule of the original except the one that was mutated, so
+ * shared rules must never be changed in place. The list
+ * returned by {@link #getRules()} should only be changed through
+ * {@link #add(Rule)} and mutations.
  */
 public class ProgramImpl implements Program {
 
 	private ArrayList<Rule> children;
+	private int size; // cached size of the program, 0 if not yet known
+	private int[] offsets; // index of the first node of each rule, null if not yet known
+	private MutationEngine mutations; // index of valid mutations, null if not yet built
+	private long hash; // cached structural hash, 0 if not yet known
 
 	/**
 	 * Constructs a ProgramImpl with an empty list of rule children 
@@ -21,18 +36,139 @@ public class ProgramImpl implements Program {
 
 	@Override
 	public int size() {
-		int size = 0;
-		for (Rule r : children) {
-			size = size + r.size();
+		if (size == 0)
+			indexRules();
+		return size;
+	}
+
+	/**
+	 * Fills the table of rule offsets and the cached size of the program
+	 */
+	private void indexRules() {
+		offsets = new int[children.size()];
+		int index = 1;
+		for (int i = 0; i < offsets.length; i++) {
+			offsets[i] = index;
+			index += children.get(i).size();
 		}
+		size = index;
+	}
 
-		return size + 1;
+	/**
+	 * Forgets the cached size, rule offsets, hash and mutation index after a rule was added, removed,
+	 * reordered or changed shape
+	 */
+	void rulesChanged() {
+		size = 0;
+		offsets = null;
+		mutations = null;
+		hash = 0;
+	}
+
+	/**
+	 * Forgets the cached hash after a token or value in a rule changed
+	 */
+	void hashChanged() {
+		hash = 0;
+	}
+
+	@Override
+	public long structuralHash() {
+		if (hash != 0)
+			return hash;
+
+		long h = children.size();
+		for (Rule r : children)
+			h = BinaryNode.combine(h, r.structuralHash());
+		hash = h == 0 ? 1 : h;
+		return hash;
+	}
+
+	@Override
+	public boolean sameAs(Node n) {
+		if (n == this)
+			return true;
+		if (!(n instanceof ProgramImpl) || n.structuralHash() != structuralHash())
+			return false;
+		ArrayList<Rule> rules = ((ProgramImpl) n).children;
+		if (rules.size() != children.size())
+			return false;
+		for (int i = 0; i < children.size(); i++)
+			if (!children.get(i).sameAs(rules.get(i)))
+				return false;
+		return true;
 	}
 
 	@Override
 	public void add(Rule r) {
 		children.add(r);
 		r.parent = this;
+		rulesChanged();
+	}
+
+	/**
+	 * Adds rule {@code r}, which may also belong to other programs. Shared rules
+	 * are never changed in place, and keep no parent so that they do not hold
+	 * on to any program that once contained them.
+	 * @param r
+	 * 		The rule to be shared
+	 */
+	public void addShared(Rule r) {
+		children.add(r);
+		r.parent = null;
+		rulesChanged();
+	}
+
+	/**
+	 * Returns a copy of this program that shares all of its rules
+	 * @return
+	 * 		A copy of the list of rules of this program
+	 */
+	public ProgramImpl shallowCopy() {
+		ProgramImpl copy = new ProgramImpl();
+		for (Rule r : children)
+			copy.addShared(r);
+		return copy;
+	}
+
+	/**
+	 * Replaces rule {@code i} with a copy that belongs only to this program,
+	 * so that it can be changed
+	 * @param i
+	 * 		Index of the rule
+	 * @return
+	 * 		The copy of the rule
+	 */
+	Rule unshare(int i) {
+		Rule copy = children.get(i).clone();
+		copy.parent = this;
+		children.set(i, copy);
+		rulesChanged();
+		return copy;
+	}
+
+	/**
+	 * Returns the index of the rule that contains node {@code index}
+	 * @param index
+	 * 		Index of a node other than the program itself
+	 * @return
+	 * 		Index of the rule
+	 */
+	int ruleAt(int index) {
+		if (offsets == null)
+			indexRules();
+
+		// Find the last rule that starts at or before index
+		int lo = 0;
+		int hi = offsets.length - 1;
+		while (lo < hi) {
+			int mid = (lo + hi + 1) >>> 1;
+			if (offsets[mid] <= index)
+				lo = mid;
+			else
+				hi = mid - 1;
+		}
+		return lo;
 	}
 	
 	public ArrayList<Rule> getRules(){
@@ -43,26 +179,24 @@ public class ProgramImpl implements Program {
 	public Node nodeAt(int index) {
 		if (index == 0)
 			return this;
+		if (offsets == null)
+			indexRules();
+		if (index < 0 || index >= size)
+			return null;
 
-		int count = index;
-		for (Rule r : children) {
-			int size = r.size();
-			if (count <= size)
-				return r.nodeAt(count - 1);
-			count -= size;
-		}
-
-		return null;
+		int i = ruleAt(index);
+		return children.get(i).nodeAt(index - offsets[i]);
 	}
 
 	@Override
-	public Program clone() {
+	public ProgramImpl clone() {
 		ProgramImpl copy = new ProgramImpl();
 		for (Rule r : children) {
 			Rule rClone = r.clone();
 			rClone.setParent(copy);
 			copy.add(rClone);
 		}
+		copy.hash = hash;
 		return copy;
 	}
 
@@ -98,7 +232,20 @@ public class ProgramImpl implements Program {
 
 	@Override
 	public boolean mutateNode(Mutation m) {
-		Random r = new Random();
+		return mutateNode(m, new Random());
+	}
+
+	/**
+	 * Conducts mutation {@code m} on the program, if possible, drawing from
+	 * {@code r}
+	 * @param m
+	 * 		Mutation to be done
+	 * @param r
+	 * 		Source of randomness
+	 * @return
+	 * 		Whether mutation was successful
+	 */
+	public boolean mutateNode(Mutation m, Random r) {
 		if (m.equals(MutationFactory.getRemove())) {
 			return this.removeRule(r);
 		}
@@ -107,7 +254,7 @@ public class ProgramImpl implements Program {
 		}
 		if (m.equals(MutationFactory.getDuplicate())) {
 			if (children.size() > 0) {
-				children.add((Rule) children.get(0).getSubtree());
+				add((Rule) children.get(0).getSubtree());
 				return true;
 			} else {
 				// Create dummy Rule to call generate method on
@@ -118,8 +265,9 @@ public class ProgramImpl implements Program {
 				
 				// Add the generated node, remove the dummy node
 				this.add(dummyRule);
-				this.add((Rule) children.get(0).generateSubtree());
+				this.add((Rule) children.get(0).generateSubtree(r));
 				this.children.remove(0);
+				rulesChanged();
 				
 				return true;
 			}
@@ -127,9 +275,9 @@ public class ProgramImpl implements Program {
 		if (m.equals(MutationFactory.getReplace())) {
 			if(children.size() == 0)
 				return false;
-			int index = new Random().nextInt(children.size());
+			int index = r.nextInt(children.size());
 			Rule rule = children.remove(index);
-			children.add((Rule)rule.getSubtree());
+			add((Rule)rule.getSubtree());
 			return true;
 		}
 		
@@ -138,33 +286,14 @@ public class ProgramImpl implements Program {
 
 	@Override
 	public Program mutate() {
-		Random r = new Random();
-		Mutation m;
-		Program copy = null;
-		while (copy == null) {
-			switch (r.nextInt(6)) {
-			case 0:
-				m = MutationFactory.getRemove();
-				break;
-			case 1:
-				m = MutationFactory.getSwap();
-				break;
-			case 2:
-				m = MutationFactory.getReplace();
-				break;
-			case 3:
-				m = MutationFactory.getTransform();
-				break;
-			case 4:
-				m = MutationFactory.getInsert();
-				break;
-			default:
-				m = MutationFactory.getDuplicate();
-				break;
-			}
-			copy = this.mutate(r.nextInt(this.size()), m);
-		}
-		return copy;
+		return mutate(new Random());
+	}
+
+	@Override
+	public Program mutate(Random r) {
+		if (mutations == null)
+			mutations = new MutationEngine(this);
+		return mutations.mutate(r);
 	}
 
 	@Override
@@ -198,6 +327,7 @@ public class ProgramImpl implements Program {
 			return false;
 
 		children.remove(r.nextInt(children.size()));
+		rulesChanged();
 		return true;
 	}
 
@@ -215,6 +345,7 @@ public class ProgramImpl implements Program {
 		int index = r.nextInt(children.size());
 		Rule rule = children.remove(index);
 		children.add(rule);
+		rulesChanged();
 		return true;
 	}
 
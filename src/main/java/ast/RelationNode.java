@@ -27,12 +27,12 @@ public class RelationNode extends ConjunctionNode {
 	 */
 	public boolean removeChild() {
 		if (!(left instanceof FactorNode)) {
-			left = (new Random().nextInt(2) == 0) ? left.left : left.right; // randomly replaces node
+			setLeft((new Random().nextInt(2) == 0) ? left.left : left.right); // randomly replaces node
 			return true;
 		}
 
 		if (!(right instanceof FactorNode)) {
-			right = (new Random().nextInt(2) == 0) ? right.left : right.right; // randomly replaces node
+			setRight((new Random().nextInt(2) == 0) ? right.left : right.right); // randomly replaces node
 			return true;
 		}
 
@@ -41,7 +41,9 @@ public class RelationNode extends ConjunctionNode {
 
 	@Override
 	public RelationNode clone() {
-		return new RelationNode((Expression) left.clone(), tt, (Expression) right.clone());
+		RelationNode newRel = new RelationNode((Expression) left.clone(), tt, (Expression) right.clone());
+		newRel.braces = braces;
+		return newRel;
 	}
 
 	@Override
@@ -51,18 +53,18 @@ public class RelationNode extends ConjunctionNode {
 		if (m.equals(MutationFactory.getRemove())) {
 			if (new Random().nextInt(2) == 0) {
 				if (!(left instanceof FactorNode)) {
-					left = left.left;
+					setLeft(left.left);
 					return true;
 				}
 			} else {
 				if (!(right instanceof FactorNode)) {
-					right = right.left;
+					setRight(right.left);
 					return true;
 				}
 			}
 		}
 		if (m.equals(MutationFactory.getTransform())) {
-			this.transform();
+			this.transform(new Random());
 			return true;
 		}
 		
@@ -70,8 +72,7 @@ public class RelationNode extends ConjunctionNode {
 	}
 
 	@Override
-	public RelationNode generateSubtree() {
-		Random r = new Random();
+	public RelationNode generateSubtree(Random r) {
 		TokenType newType;
 		switch (r.nextInt(6)) {
 		case 0:
@@ -93,14 +94,13 @@ public class RelationNode extends ConjunctionNode {
 			newType = TokenType.NE;
 			break;
 		}
-		return new RelationNode((Expression) left.generateSubtree(), newType, (Expression) right.generateSubtree());
+		return new RelationNode((Expression) left.generateSubtree(r), newType, (Expression) right.generateSubtree(r));
 	}
 
 	/**
 	 * Sets the token type of this relation node to another valid type
 	 */
-	public void transform() {
-		Random r = new Random();
+	public void transform(Random r) {
 		TokenType newType;
 		switch (r.nextInt(6)) {
 		case 0:
@@ -124,6 +124,7 @@ public class RelationNode extends ConjunctionNode {
 		}
 
 		tt = newType;
+		hashChanged(this);
 	}
 
 }
@@ -14,7 +14,9 @@ public class Rule implements Node {
 	TokenType tt;
 	ArrayList<Update> updates;
 	Command command;
-	Program parent;
+	Program parent; // null if the rule may be shared by several programs
+	int size; // cached size of the subtree rooted here, 0 if not yet known
+	long hash; // cached structural hash of the subtree rooted here, 0 if not yet known
 
 	/**
 	 * Constructs a Rule node with a Condition {@code cond} and a Command {@code comm}
@@ -110,17 +112,19 @@ public class Rule implements Node {
 		Node temp = parent.findSubtree(this);
 		if (temp != null)
 			return temp;
-		return this.generateSubtree();
+		return this.generateSubtree(new Random());
 	}
 	
 	/**
 	 * Generates a subtree of the type of the node (Rule in this case)
+	 * @param r
+	 * 		Source of randomness
 	 * @return
 	 * 		Generated rule subtree
 	 */
-	public Node generateSubtree() {
-		ConditionNode newCond = condition.generateSubtree();
-		Command newComm = (Command) command.generateSubtree();
+	public Node generateSubtree(Random r) {
+		ConditionNode newCond = condition.generateSubtree(r);
+		Command newComm = (Command) command.generateSubtree(r);
 		return new Rule(newCond, new ArrayList<Update>(), newComm);
 		
 	}
@@ -155,9 +159,9 @@ public class Rule implements Node {
 		}
 		if(m.equals(MutationFactory.getReplace())) {
 			if(r.nextInt(2) == 0)
-				condition = (ConditionNode) condition.getSubtree();
+				addCond((ConditionNode) condition.getSubtree());
 			else
-				command = (Command) command.getSubtree();
+				addComm((Command) command.getSubtree());
 			
 			assert(command != null && condition != null);
 			return true;
@@ -165,7 +169,7 @@ public class Rule implements Node {
 		if (m.equals(MutationFactory.getDuplicate())) {
 			if (updates.size() == 0)
 				return false;
-			updates.add((Update) updates.get(0).getSubtree());
+			add((Update) updates.get(0).getSubtree());
 			return true;
 		}
 		
@@ -174,11 +178,44 @@ public class Rule implements Node {
 	
 	@Override
 	public int size() {
+		if (size != 0)
+			return size;
+
 		int count = 0;
 		for (Update u : updates) {
 			count += u.size();
 		}
-		return 1 + condition.size() + command.size() + count;
+		size = 1 + condition.size() + command.size() + count;
+		return size;
+	}
+
+	@Override
+	public long structuralHash() {
+		if (hash != 0)
+			return hash;
+
+		long h = BinaryNode.combine(tt.ordinal(), updates.size());
+		h = BinaryNode.combine(h, condition.structuralHash());
+		for (Update u : updates)
+			h = BinaryNode.combine(h, u.structuralHash());
+		h = BinaryNode.combine(h, command.structuralHash());
+		hash = h == 0 ? 1 : h;
+		return hash;
+	}
+
+	@Override
+	public boolean sameAs(Node n) {
+		if (n == this)
+			return true;
+		if (!(n instanceof Rule) || n.structuralHash() != structuralHash())
+			return false;
+		Rule r = (Rule) n;
+		if (tt != r.tt || updates.size() != r.updates.size() || !condition.sameAs(r.condition))
+			return false;
+		for (int i = 0; i < updates.size(); i++)
+			if (!updates.get(i).sameAs(r.updates.get(i)))
+				return false;
+		return command.sameAs(r.command);
 	}
 
 	/**
@@ -189,6 +226,7 @@ public class Rule implements Node {
 	public void add(Update u) {
 		updates.add(u);
 		u.parent = this;
+		BinaryNode.sizeChanged(this);
 	}
 	
 	/**
@@ -199,6 +237,8 @@ public class Rule implements Node {
 	public void addCond(ConditionNode cond) {
 		assert(cond != null);
 		this.condition = cond;
+		cond.setParent(this);
+		BinaryNode.sizeChanged(this);
 	}
 	
 	/**
@@ -209,6 +249,8 @@ public class Rule implements Node {
 	public void addComm(Command comm) {
 		assert(comm != null);
 		this.command = comm;
+		comm.setParent(this);
+		BinaryNode.sizeChanged(this);
 	}
 	
 	@Override
@@ -263,7 +305,9 @@ public class Rule implements Node {
 		ArrayList<Update> updatesCopy = new ArrayList<Update>();
 		for (Update u : updates)
 			updatesCopy.add(u.clone());
-		return new Rule(condCopy, updatesCopy, commCopy);
+		Rule copy = new Rule(condCopy, updatesCopy, commCopy);
+		copy.hash = hash;
+		return copy;
 	}
 	
 	/** Replaces the conditionNode or conjunctionNode with a child of theirs
@@ -277,7 +321,7 @@ public class Rule implements Node {
 			return false;
 		
 		int i = r.nextInt(2);
-		condition = i == 1? (ConditionNode) condition.left : (ConditionNode) condition.right; // randomly replaces node
+		addCond(i == 1? (ConditionNode) condition.left : (ConditionNode) condition.right); // randomly replaces node
 		return true;
 	}
 	
@@ -294,6 +338,7 @@ public class Rule implements Node {
 		
 		int i = r.nextInt(updates.size());
 		updates.remove(i);
+		BinaryNode.sizeChanged(this);
 		return true;
 	}
 	
@@ -310,12 +355,14 @@ public class Rule implements Node {
 			Update u1 = updates.get(0);
 			updates.add((Update) command);
 			command = u1;
+			BinaryNode.sizeChanged(this);
 			return true;
 		}
 		
 		if(numUpdates > 2) {
 			Update u1 = updates.remove(0);
 			updates.add(u1);
+			BinaryNode.hashChanged(this);
 			return true;
 		}
 		
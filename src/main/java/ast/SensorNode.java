@@ -40,7 +40,7 @@ public class SensorNode extends FactorNode{
 		if (m.equals(MutationFactory.getTransform())) {
 			if(tt == TokenType.SMELL)
 				return false;
-			this.transform();
+			this.transform(new Random());
 			return true;
 		}
 		
@@ -50,8 +50,7 @@ public class SensorNode extends FactorNode{
 	/**
 	 * Sets the TokenType to another one of valid type
 	 */
-	public void transform() {
-		Random r = new Random();
+	public void transform(Random r) {
 		switch(r.nextInt(3)) {
 			case 0:
 				tt = TokenType.NEARBY;
@@ -62,11 +61,11 @@ public class SensorNode extends FactorNode{
 			default:
 				tt = TokenType.RANDOM;
 		}
+		hashChanged(this);
 	}
 	
 	@Override
-	public SensorNode generateSubtree() {
-		Random r = new Random();
+	public SensorNode generateSubtree(Random r) {
 		switch (r.nextInt(4)) {
 			case 0:
 				return new SensorNode(null, TokenType.NEARBY, new NumNode(r.nextInt(17) + ""));
@@ -22,7 +22,9 @@ public class TermNode extends Expression{
 	
 	@Override
 	public TermNode clone() {
-		return new TermNode(left.clone(), tt, right.clone());
+		TermNode newTerm = new TermNode(left.clone(), tt, right.clone());
+		newTerm.paren = paren;
+		return newTerm;
 	}
 	
 	@Override
@@ -30,7 +32,7 @@ public class TermNode extends Expression{
 		if (super.mutateNode(m))
 			return true;
 		if (m.equals(MutationFactory.getTransform())) {
-			this.transform();
+			this.transform(new Random());
 			return true;
 		}
 		if (m.equals(MutationFactory.getInsert())) {
@@ -50,17 +52,16 @@ public class TermNode extends Expression{
 	}
 	
 	@Override
-	public TermNode generateSubtree() {
-		if (left.hashCode() / 4 % 2 == 0)
-			return (TermNode) left.generateSubtree();
-		return (TermNode) right.generateSubtree();
+	public TermNode generateSubtree(Random r) {
+		if (r.nextInt(2) == 0)
+			return (TermNode) left.generateSubtree(r);
+		return (TermNode) right.generateSubtree(r);
 	}
 	
 	/**
 	 * Sets the TokenType to another one of valid type with equal probability
 	 */
-	public void transform() {
-		Random r = new Random();
+	public void transform(Random r) {
 		switch(r.nextInt(3)) {
 			case 0:
 				tt = TokenType.MUL;
@@ -71,6 +72,7 @@ public class TermNode extends Expression{
 			default:
 				tt = TokenType.MOD;
 		}
+		hashChanged(this);
 	}
 	
 	@Override
@@ -1,5 +1,7 @@
 package ast;
 
+import java.util.Random;
+
 import interpret.Interpreter;
 import interpret.Outcome;
 import parse.TokenType;
@@ -32,8 +34,8 @@ public class Update extends Command {
 	}
 	
 	@Override
-	public Update generateSubtree() {
-		return new Update((MemNode) left.generateSubtree(), (Expression) right.generateSubtree());
+	public Update generateSubtree(Random r) {
+		return new Update((MemNode) left.generateSubtree(r), (Expression) right.generateSubtree(r));
 	}
 	
 	@Override
@@ -7,6 +7,7 @@ import java.io.InputStreamReader;
 import java.io.Reader;
 import java.io.StringReader;
 import java.util.ArrayList;
+import java.util.HashMap;
 
 import javafx.event.EventHandler;
 import javafx.scene.canvas.Canvas;
@@ -31,6 +32,10 @@ public class ClientGrid extends Canvas {
 			Color.TOMATO, Color.BLACK, Color.SILVER, Color.HOTPINK, Color.ORANGE, Color.GAINSBORO };
 	// Names of critter species
 	private static ArrayList<String> names = new ArrayList<String>();
+	// Last text of a program sent by the server for each program hash, in the
+	// order of the hexes. The server sends it again only when the program
+	// with that hash is a different one.
+	private static HashMap<String, String> programs = new HashMap<String, String>();
 
 	// Size is horizontal length in pixels
 	public static double SIDE_OF_HEX = 80;
@@ -54,6 +59,7 @@ public class ClientGrid extends Canvas {
 		this.infoArea = infoBox;
 		
 		this.world = world;
+		fillPrograms(world);
 		COLUMNS = world.cols;
 		ROWS = world.rows;
 		// Setting size of canvas with padding
@@ -266,11 +272,31 @@ public class ClientGrid extends Canvas {
 		return Math.hypot(xHex - x, yHex - y);
 	}
 
+	/**
+	 * Remembers the program texts sent with {@code w}, and fills in the texts
+	 * of the programs that were sent earlier and are only given by their hash
+	 * @param w  World information received from the server
+	 */
+	private void fillPrograms(WorldInfoBundle w) {
+		if (w.state == null)
+			return;
+
+		for (HexInfo h : w.state) {
+			if (h.program_hash == null)
+				continue;
+			if (h.program != null)
+				programs.put(h.program_hash, h.program);
+			else
+				h.program = programs.get(h.program_hash);
+		}
+	}
+
 	/**
 	 * Draws the grid and all of the critters, food and rocks in the world.
 	 */
 	public void draw(WorldInfoBundle newWorld) {
 		world = newWorld;
+		fillPrograms(world);
 		
 		GraphicsContext g = getGraphicsContext2D();
 		g.setFill(Color.ANTIQUEWHITE);
@@ -402,6 +428,7 @@ public class ClientGrid extends Canvas {
 		int id; // for critter
 		String species_id;
 		String program;
+		String program_hash; // null if the program is not viewable
 		int direction;
 		int[] mem;
 		int recently_executed_rule;
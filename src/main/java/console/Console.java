@@ -59,10 +59,10 @@ public class Console {
 	public void createAscii() {
 		// Calculate height of ASCII map
 		int r = 0;
-		while (2 * r < 2 * world.getWorld()[0].length - world.getWorld().length)
+		while (2 * r < 2 * world.getRows() - world.getColumns())
 			r++;
 		
-		asciiMap = new char[2 * r - 1][world.getWorld().length];
+		asciiMap = new char[2 * r - 1][world.getColumns()];
 		for (int i = 0; i < asciiMap.length; i++)
 			for (int j = 0; j < asciiMap[0].length; j++)
 				asciiMap[i][j] = ' ';
@@ -0,0 +1,8 @@
+package exceptions;
+
+/**
+ * An exception indicating that a critter program could not be compiled.
+ */
+public class CompileError extends Exception {
+   private static final long serialVersionUID = 201710180001L;
+}
@@ -0,0 +1,267 @@
+package interpret;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+
+import ast.Action;
+import ast.BinaryNode;
+import ast.Command;
+import ast.ConditionNode;
+import ast.Expression;
+import ast.FactorNode;
+import ast.MemNode;
+import ast.NumNode;
+import ast.Program;
+import ast.Rule;
+import ast.SensorNode;
+import ast.Update;
+import exceptions.CompileError;
+import parse.TokenType;
+
+/**
+ * Lowers critter programs, simplified by the {@link Optimizer}, into
+ * {@link BytecodeProgram}s.
+ */
+public class BytecodeCompiler {
+
+	private final ArrayList<Integer> code;
+	private final ArrayList<Integer> constants;
+	private final HashMap<Integer, Integer> constantIndex;
+	private int depth; // depth of the operand stack after the last instruction
+	private int maxDepth;
+
+	private BytecodeCompiler() {
+		code = new ArrayList<Integer>();
+		constants = new ArrayList<Integer>();
+		constantIndex = new HashMap<Integer, Integer>();
+	}
+
+	/**
+	 * Lowers program {@code p} into an instruction stream
+	 *
+	 * @param p
+	 *            Program to compile
+	 * @return The compiled program
+	 * @throws CompileError
+	 *             if {@code p} contains a node that cannot be compiled
+	 */
+	public static BytecodeProgram compile(Program p) throws CompileError {
+		BytecodeCompiler bc = new BytecodeCompiler();
+		Optimizer opt = Optimizer.optimize(p);
+		ArrayList<Rule> ruleList = opt.getRules();
+		Rule[] rules = new Rule[ruleList.size()];
+
+		for (int i = 0; i < rules.length; i++) {
+			Rule r = ruleList.get(i);
+			rules[i] = opt.originOf(i);
+			bc.condition(r.getCond());
+			int jump = bc.emit(BytecodeProgram.JZ, -1, 0);
+
+			for (Update u : r.getUpdates())
+				bc.update(u);
+
+			Command comm = r.getComm();
+			if (comm instanceof Update) {
+				bc.update((Update) comm);
+				bc.emit(BytecodeProgram.PASS, 0);
+			} else if (comm instanceof Action) {
+				TokenType t = comm.getTokenType();
+				int pops = 0;
+				if (t == TokenType.TAG || t == TokenType.SERVE) {
+					bc.expr(comm.right());
+					pops = 1;
+				}
+				bc.emit(BytecodeProgram.ACT, -pops, t.ordinal(), i);
+			} else
+				throw new CompileError();
+
+			bc.code.set(jump, bc.code.size());
+		}
+		bc.emit(BytecodeProgram.NOMATCH, 0);
+
+		int[] code = new int[bc.code.size()];
+		for (int i = 0; i < code.length; i++)
+			code[i] = bc.code.get(i);
+		int[] constants = new int[bc.constants.size()];
+		for (int i = 0; i < constants.length; i++)
+			constants[i] = bc.constants.get(i);
+
+		return new BytecodeProgram(code, constants, rules, opt.lastRule(), bc.maxDepth);
+	}
+
+	/**
+	 * Appends an instruction to the stream
+	 *
+	 * @param op
+	 *            Opcode of the instruction
+	 * @param effect
+	 *            Change in operand stack depth caused by the instruction
+	 * @param operands
+	 *            Operands of the instruction
+	 * @return Index in the stream of the last operand, or of the opcode if there
+	 *         are none
+	 */
+	private int emit(int op, int effect, int... operands) {
+		code.add(op);
+		for (int o : operands)
+			code.add(o);
+
+		depth += effect;
+		maxDepth = Math.max(maxDepth, depth);
+		return code.size() - 1;
+	}
+
+	/**
+	 * Returns the index of {@code value} in the constant pool, adding it if
+	 * needed
+	 */
+	private int constant(int value) {
+		Integer k = constantIndex.get(value);
+		if (k == null) {
+			k = constants.size();
+			constants.add(value);
+			constantIndex.put(value, k);
+		}
+		return k;
+	}
+
+	/**
+	 * Appends instructions that push 1 if condition {@code c} holds and 0
+	 * otherwise
+	 */
+	private void condition(BinaryNode c) throws CompileError {
+		if (!(c instanceof ConditionNode))
+			throw new CompileError();
+
+		TokenType t = c.getTokenType();
+		if (t == TokenType.OR || t == TokenType.AND) {
+			// The value of the left side decides the result if it is 1 for OR
+			// or 0 for AND; otherwise the right side does.
+			condition(c.left());
+			int jump = emit(t == TokenType.OR ? BytecodeProgram.JNZK : BytecodeProgram.JZK, -1, 0);
+			condition(c.right());
+			code.set(jump, code.size());
+			return;
+		}
+
+		Boolean value = Optimizer.constant((ConditionNode) c);
+		if (value != null) {
+			emit(BytecodeProgram.CONST, 1, constant(value ? 1 : 0));
+			return;
+		}
+
+		expr(c.left());
+		expr(c.right());
+		switch (t) {
+		case LT:
+			emit(BytecodeProgram.LT, -1);
+			break;
+		case LE:
+			emit(BytecodeProgram.LE, -1);
+			break;
+		case EQ:
+			emit(BytecodeProgram.EQ, -1);
+			break;
+		case GE:
+			emit(BytecodeProgram.GE, -1);
+			break;
+		case GT:
+			emit(BytecodeProgram.GT, -1);
+			break;
+		case NE:
+			emit(BytecodeProgram.NE, -1);
+			break;
+		default:
+			throw new CompileError();
+		}
+	}
+
+	/**
+	 * Appends instructions that push the value of expression {@code e}
+	 */
+	private void expr(BinaryNode e) throws CompileError {
+		if (e instanceof NumNode) {
+			int value;
+			try {
+				value = ((NumNode) e).getNum();
+			} catch (NumberFormatException n) {
+				throw new CompileError();
+			}
+
+			emit(BytecodeProgram.CONST, 1, constant(value));
+			return;
+		}
+
+		if (e instanceof MemNode) {
+			expr(e.right());
+			emit(BytecodeProgram.MEM, 0);
+			return;
+		}
+
+		if (e instanceof SensorNode) {
+			switch (e.getTokenType()) {
+			case SMELL:
+				emit(BytecodeProgram.SMELL, 1);
+				return;
+			case NEARBY:
+				expr(e.right());
+				emit(BytecodeProgram.NEARBY, 0);
+				return;
+			case AHEAD:
+				expr(e.right());
+				emit(BytecodeProgram.AHEAD, 0);
+				return;
+			case RANDOM:
+				expr(e.right());
+				emit(BytecodeProgram.RANDOM, 0);
+				return;
+			default:
+				throw new CompileError();
+			}
+		}
+
+		if (e instanceof FactorNode) {
+			// Only run in case of - (factor)
+			expr(e.right());
+			emit(BytecodeProgram.NEG, 0);
+			return;
+		}
+
+		if (!(e instanceof Expression))
+			throw new CompileError();
+
+		expr(e.left());
+		expr(e.right());
+		switch (e.getTokenType()) {
+		case PLUS:
+			emit(BytecodeProgram.ADD, -1);
+			break;
+		case MINUS:
+			emit(BytecodeProgram.SUB, -1);
+			break;
+		case MUL:
+			emit(BytecodeProgram.MUL, -1);
+			break;
+		case DIV:
+			emit(BytecodeProgram.DIV, -1);
+			break;
+		case MOD:
+			emit(BytecodeProgram.MOD, -1);
+			break;
+		default:
+			throw new CompileError();
+		}
+	}
+
+	/**
+	 * Appends instructions that perform update {@code u}
+	 */
+	private void update(Update u) throws CompileError {
+		if (!(u.left() instanceof MemNode))
+			throw new CompileError();
+
+		expr(u.left().right());
+		expr(u.right());
+		emit(BytecodeProgram.STORE, -2);
+	}
+}
@@ -0,0 +1,225 @@
+package interpret;
+
+import ast.Rule;
+import parse.TokenType;
+import simulator.Critter;
+
+/**
+ * A critter program lowered by {@link BytecodeCompiler} into a flat
+ * instruction stream for a small stack machine. Running it has the same
+ * rule-selection semantics as {@link CritterRunner#interpret()}.
+ * <p>
+ * Each rule is laid out as its condition, a jump to the next rule if the
+ * condition is false, its updates and finally its command. The stream ends
+ * with {@link #NOMATCH}, which is reached when no rule matched. Conditions
+ * joined by {@code and} and {@code or} are short-circuited with
+ * {@link #JZK} and {@link #JNZK}.
+ */
+public class BytecodeProgram implements Executable {
+
+	// Instructions. Operands follow the opcode in the stream.
+	/** push(constants[k]); operand k */
+	static final int CONST = 0;
+	/** push(mem[pop()]) */
+	static final int MEM = 1;
+	/** push(nearby[pop()]) */
+	static final int NEARBY = 2;
+	/** push(ahead[pop()]) */
+	static final int AHEAD = 3;
+	/** push(random[pop()]) */
+	static final int RANDOM = 4;
+	/** push(smell) */
+	static final int SMELL = 5;
+	/** push(-pop()) */
+	static final int NEG = 6;
+	static final int ADD = 7;
+	static final int SUB = 8;
+	static final int MUL = 9;
+	static final int DIV = 10;
+	static final int MOD = 11;
+	static final int LT = 12;
+	static final int LE = 13;
+	static final int EQ = 14;
+	static final int GE = 15;
+	static final int GT = 16;
+	static final int NE = 17;
+	/** if (top() == 0) jump to target, else pop(); operand target */
+	static final int JZK = 18;
+	/** if (top() != 0) jump to target, else pop(); operand target */
+	static final int JNZK = 19;
+	/** if (pop() == 0) jump to target; operand target */
+	static final int JZ = 20;
+	/** value = pop(); mem[pop()] := value */
+	static final int STORE = 21;
+	/** Ends a pass whose rule had no action */
+	static final int PASS = 22;
+	/** Performs an action, popping its argument for TAG and SERVE; operands type, rule index */
+	static final int ACT = 23;
+	/** No rule matched, so the critter waits */
+	static final int NOMATCH = 24;
+
+	private static final TokenType[] TYPES = TokenType.values();
+
+	private final int[] code;
+	private final int[] constants;
+	private final Rule[] rules;
+	private final Rule noMatchRule;
+	private final int maxStack;
+
+	/**
+	 * Constructs a program from its instruction stream
+	 *
+	 * @param code
+	 *            Instruction stream
+	 * @param constants
+	 *            Constant pool referenced by {@link #CONST}
+	 * @param rules
+	 *            Rules the compiled rules were built from, referenced by rule
+	 *            index
+	 * @param noMatchRule
+	 *            Rule recorded as the last rule when no rule matches
+	 * @param maxStack
+	 *            Maximum depth of the operand stack
+	 */
+	BytecodeProgram(int[] code, int[] constants, Rule[] rules, Rule noMatchRule, int maxStack) {
+		this.code = code;
+		this.constants = constants;
+		this.rules = rules;
+		this.noMatchRule = noMatchRule;
+		this.maxStack = maxStack;
+	}
+
+	@Override
+	public Outcome run(CritterRunner runner) {
+		Critter critter = runner.critter;
+		int[] mem = critter.getMem();
+		int[] stack = runner.stack(maxStack);
+		int[] code = this.code;
+		int sp = 0;
+		int pc = 0;
+		int a, b;
+
+		runner.beginTurn();
+		mem[5] = 1;
+		while (true) {
+			switch (code[pc++]) {
+			case CONST:
+				stack[sp++] = constants[code[pc++]];
+				break;
+			case MEM:
+				stack[sp - 1] = runner.readMem(stack[sp - 1]);
+				break;
+			case NEARBY:
+				stack[sp - 1] = runner.sense(TokenType.NEARBY, stack[sp - 1]);
+				break;
+			case AHEAD:
+				stack[sp - 1] = runner.sense(TokenType.AHEAD, stack[sp - 1]);
+				break;
+			case RANDOM:
+				stack[sp - 1] = runner.sense(TokenType.RANDOM, stack[sp - 1]);
+				break;
+			case SMELL:
+				stack[sp++] = runner.sense(TokenType.SMELL, 0);
+				break;
+			case NEG:
+				stack[sp - 1] = -stack[sp - 1];
+				break;
+			case ADD:
+				b = stack[--sp];
+				stack[sp - 1] += b;
+				break;
+			case SUB:
+				b = stack[--sp];
+				stack[sp - 1] -= b;
+				break;
+			case MUL:
+				b = stack[--sp];
+				stack[sp - 1] *= b;
+				break;
+			case DIV:
+				b = stack[--sp];
+				stack[sp - 1] = b == 0 ? 0 : stack[sp - 1] / b;
+				break;
+			case MOD:
+				b = stack[--sp];
+				stack[sp - 1] = b == 0 ? 0 : stack[sp - 1] % b;
+				break;
+			case LT:
+				b = stack[--sp];
+				stack[sp - 1] = stack[sp - 1] < b ? 1 : 0;
+				break;
+			case LE:
+				b = stack[--sp];
+				stack[sp - 1] = stack[sp - 1] <= b ? 1 : 0;
+				break;
+			case EQ:
+				b = stack[--sp];
+				stack[sp - 1] = stack[sp - 1] == b ? 1 : 0;
+				break;
+			case GE:
+				b = stack[--sp];
+				stack[sp - 1] = stack[sp - 1] >= b ? 1 : 0;
+				break;
+			case GT:
+				b = stack[--sp];
+				stack[sp - 1] = stack[sp - 1] > b ? 1 : 0;
+				break;
+			case NE:
+				b = stack[--sp];
+				stack[sp - 1] = stack[sp - 1] != b ? 1 : 0;
+				break;
+			case JZK:
+				if (stack[sp - 1] == 0) {
+					pc = code[pc];
+				} else {
+					sp--;
+					pc++;
+				}
+				break;
+			case JNZK:
+				if (stack[sp - 1] != 0) {
+					pc = code[pc];
+				} else {
+					sp--;
+					pc++;
+				}
+				break;
+			case JZ:
+				if (stack[--sp] == 0)
+					pc = code[pc];
+				else
+					pc++;
+				break;
+			case STORE:
+				b = stack[--sp];
+				a = stack[--sp];
+				runner.writeMem(a, b);
+				break;
+			case PASS:
+				mem[5]++;
+				if (mem[5] >= runner.maxPasses) {
+					mem[5] = 1;
+					return runner.noAction();
+				}
+				pc = 0;
+				break;
+			case ACT: {
+				TokenType t = TYPES[code[pc++]];
+				Rule r = rules[code[pc]];
+				Outcome result = runner.act(t, t == TokenType.TAG || t == TokenType.SERVE ? stack[--sp] : 0);
+				mem[5] = 1;
+				critter.setLastRule(r);
+				return result;
+			}
+			case NOMATCH: {
+				Outcome result = runner.act(TokenType.WAIT, 0);
+				mem[5] = 1;
+				critter.setLastRule(noMatchRule);
+				return result;
+			}
+			default:
+				throw new AssertionError();
+			}
+		}
+	}
+}
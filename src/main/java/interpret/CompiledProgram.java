@@ -0,0 +1,121 @@
+package interpret;
+
+import ast.Rule;
+import parse.TokenType;
+import simulator.Critter;
+
+/**
+ * A critter program compiled by {@link ProgramCompiler} into a tree of small
+ * evaluators. Running it has the same rule-selection semantics as
+ * {@link CritterRunner#interpret()}, without walking the AST or allocating an
+ * outcome for every node.
+ * <p>
+ * A compiled program holds no critter state, so it can be run by any critter
+ * whose program it was compiled from.
+ */
+public class CompiledProgram implements Executable {
+
+	/**
+	 * A compiled expression
+	 */
+	interface IntCode {
+		int eval(CritterRunner r);
+	}
+
+	/**
+	 * A compiled condition
+	 */
+	interface BoolCode {
+		boolean eval(CritterRunner r);
+	}
+
+	/**
+	 * A compiled update
+	 */
+	interface UpdateCode {
+		void exec(CritterRunner r);
+	}
+
+	private final Rule[] rules;
+	private final Rule noMatchRule;
+	private final BoolCode[] conditions;
+	private final UpdateCode[][] updates;
+	private final UpdateCode[] updateCommands;
+	private final TokenType[] actions;
+	private final IntCode[] actionArgs;
+	private final int memoSlots;
+
+	/**
+	 * Constructs a compiled program. Rule {@code i} ends with update
+	 * {@code updateCommands[i]} if it is not null and with action
+	 * {@code actions[i]} otherwise.
+	 *
+	 * @param rules
+	 *            Rules the compiled rules were built from
+	 * @param noMatchRule
+	 *            Rule recorded as the last rule when no rule matches
+	 * @param conditions
+	 *            Compiled condition of each rule
+	 * @param updates
+	 *            Compiled updates of each rule
+	 * @param updateCommands
+	 *            Compiled update command of each rule, or null
+	 * @param actions
+	 *            Action of each rule, or null
+	 * @param actionArgs
+	 *            Compiled argument of each action, or null if it has none
+	 * @param memoSlots
+	 *            Number of memo slots used by the conditions
+	 */
+	CompiledProgram(Rule[] rules, Rule noMatchRule, BoolCode[] conditions, UpdateCode[][] updates, UpdateCode[] updateCommands,
+			TokenType[] actions, IntCode[] actionArgs, int memoSlots) {
+		this.rules = rules;
+		this.noMatchRule = noMatchRule;
+		this.conditions = conditions;
+		this.updates = updates;
+		this.updateCommands = updateCommands;
+		this.actions = actions;
+		this.actionArgs = actionArgs;
+		this.memoSlots = memoSlots;
+	}
+
+	@Override
+	public Outcome run(CritterRunner runner) {
+		Critter critter = runner.critter;
+		int[] mem = critter.getMem();
+		Outcome result = null;
+		Rule last = null;
+
+		runner.beginTurn();
+		mem[5] = 1;
+		while (mem[5] < runner.maxPasses && result == null) {
+			runner.beginPass(memoSlots);
+			int count = 0;
+			while (count < conditions.length && !conditions[count].eval(runner))
+				count++;
+
+			if (count == conditions.length) {
+				last = noMatchRule;
+				result = runner.act(TokenType.WAIT, 0);
+			} else {
+				last = rules[count];
+				for (UpdateCode u : updates[count])
+					u.exec(runner);
+
+				if (updateCommands[count] != null)
+					updateCommands[count].exec(runner);
+				else
+					result = runner.act(actions[count], actionArgs[count] == null ? 0 : actionArgs[count].eval(runner));
+			}
+
+			mem[5]++;
+		}
+
+		mem[5] = 1;
+		if (result == null)
+			return runner.noAction();
+
+		critter.setLastRule(last);
+		return result;
+	}
+}
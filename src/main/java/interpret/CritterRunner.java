@@ -1,7 +1,7 @@
 package interpret;
 
 import java.util.ArrayList;
-import java.util.Random;
+import java.util.Arrays;
 
 import ast.Action;
 import ast.ConditionNode;
@@ -16,297 +16,535 @@ import ast.Update;
 import parse.TokenType;
 import simulator.Critter;
 
-public class CritterRunner implements Interpreter {
+public class CritterRunner implements Interpreter, Evaluator {
 	Critter critter;
+	final int maxPasses; // passes of a turn before it ends with no action, MAX_RULES_PER_TURN + 1
+	private final LogOutcome outcome; // reused for every outcome of this critter
+	private int[] stack; // operand stack for bytecode programs
+	
+	// Sensor values read during the current turn. The world cannot change
+	// while a critter is choosing its action, so a value is valid while its
+	// stamp equals turn.
+	private static final int AHEAD_CACHE = 32; // distances cached by ahead
+	private int turn;
+	private final int[] nearbyStamp;
+	private final int[] nearbyValue;
+	private final int[] aheadStamp;
+	private final int[] aheadValue;
+	private int smellStamp;
+	private int smellValue;
+	private long sensorHits;
+	private long sensorMisses;
+	
+	// Action chosen by the last turn run while deciding, performed by commit
+	private boolean deciding;
+	private TokenType chosen; // null if the turn chose no action
+	private int chosenArg;
+	
+	// Action performed by the last turn, performed again by replay
+	private TokenType performed; // null if the turn performed no action
+	private int performedArg;
+	
+	// Values of the shared subexpressions of a compiled program, valid while
+	// their stamp equals pass
+	int pass;
+	int[] memoStamp;
+	int[] memoValue;
 	
 	public CritterRunner(Critter c) {
 		critter = c;
+		maxPasses = c.getConstants().maxRulesPerTurn + 1;
+		outcome = new LogOutcome();
+		stack = new int[0];
+		nearbyStamp = new int[6];
+		nearbyValue = new int[6];
+		aheadStamp = new int[AHEAD_CACHE];
+		aheadValue = new int[AHEAD_CACHE];
+		turn = 1;
+		pass = 1;
+		memoStamp = new int[0];
+		memoValue = new int[0];
 	}
 	
 	@Override
 	public Outcome interpret() {
 		Program p = critter.getProgram();
 		ArrayList<Rule> rules = p.getRules();
-		Outcome result = new LogOutcome();
-		result.setAction(false);
+		int[] mem = critter.getMem();
+		Outcome result = null;
 		
-		critter.getMem()[5] = 1;
+		beginTurn();
+		mem[5] = 1;
 		
 		Rule r = null;
-		while (critter.getMem()[5] < 1000 && !result.isAction()) {
+		while (mem[5] < maxPasses && result == null) {
 			boolean trueCond = false; // a condition has not evaluated to true.
 			int count = 0; // which rule
 			while (!trueCond && count < rules.size()) {
 				r = rules.get(count);
 				
-				if (getBool(r.getCond().critAccept(this).value())) {
+				if (evalCondition(r.getCond())) {
 					trueCond = true;
 					for (Update u : r.getUpdates()) {
-						u.critAccept(this);
+						evalUpdate(u);
 					}
 					
-					result = r.getComm().critAccept(this);
+					if (r.getComm() instanceof Update)
+						evalUpdate((Update) r.getComm());
+					else
+						result = evalAction((Action) r.getComm());
 				}
 				count++;
 				
 			}
 			
-			if (count == rules.size()) {
-				result.setAction(true);
-				critter.waitAction();
-			}
+			if (!trueCond)
+				result = act(TokenType.WAIT, 0);
 			
-			critter.getMem()[5]++;
+			mem[5]++;
 		}
 		
-		if (result.isAction())
-			critter.setLastRule(r);
+		mem[5] = 1;
+		if (result == null)
+			return noAction();
 		
-		critter.getMem()[5] = 1;
-
+		critter.setLastRule(r);
 		return result;
 	}
 	
 	@Override
-	public Outcome eval(ConditionNode c) {
-		Outcome o = new LogOutcome();
-		boolean trueCond = false;
+	public boolean evalCondition(ConditionNode c) {
 		TokenType t = c.getTokenType();
-		int left = c.left().critAccept(this).value();
-		int right = c.right().critAccept(this).value();
 		
 		switch (t) {
 		case OR:
-			trueCond = getBool(left) || getBool(right);
-			break;
+			return evalCondition((ConditionNode) c.left()) || evalCondition((ConditionNode) c.right());
 		case AND:
-			trueCond = getBool(left) && getBool(right);
+			return evalCondition((ConditionNode) c.left()) && evalCondition((ConditionNode) c.right());
+		default:
 			break;
+		}
+		
+		int left = evalExpr((Expression) c.left());
+		int right = evalExpr((Expression) c.right());
+		
+		switch (t) {
 		case LT:
-			trueCond = left < right;
-			break;
+			return left < right;
 		case LE:
-			trueCond = left <= right;
-			break;
+			return left <= right;
 		case GE:
-			trueCond = left >= right;
-			break;
+			return left >= right;
 		case GT:
-			trueCond = left > right;
-			break;
+			return left > right;
 		case NE:
-			trueCond = left != right;
-			break;
+			return left != right;
 		case EQ:
-			trueCond = left == right;
-			break;
+			return left == right;
 		default:
 			throw new AssertionError();
-			
 		}
-		
-		o.setValue(trueCond ? 1 : 0);
-		return o;
-	}
-	
-	/**
-	 * Requires that i either equals 0 or 1.
-	 * @param i an integer representing the boolean
-	 * @return true if i = 1 and false if i = 0
-	 */
-	private boolean getBool(int i) {
-		return i == 1;
 	}
 	
 	@Override
-	public Outcome eval(Expression e) {
-		Outcome o = new LogOutcome();
-		TokenType t = e.getTokenType();
-		int left = e.left().critAccept(this).value();
-		int right = e.right().critAccept(this).value();
+	public int evalExpr(Expression e) {
+		if (e instanceof NumNode)
+			return ((NumNode) e).getNum();
 		
-		switch (t) {
+		if (e instanceof MemNode)
+			return readMem(evalExpr((Expression) e.right()));
+		
+		if (e instanceof SensorNode) {
+			TokenType type = e.getTokenType();
+			int right = type == TokenType.SMELL ? 0 : evalExpr((Expression) e.right());
+			return sense(type, right);
+		}
+		
+		if (e instanceof FactorNode) // Only run in case of - (factor)
+			return -evalExpr((Expression) e.right());
+		
+		int left = evalExpr((Expression) e.left());
+		int right = evalExpr((Expression) e.right());
+		
+		switch (e.getTokenType()) {
 		case PLUS:
-			o.setValue(left + right);
-			break;
+			return left + right;
 		case MINUS:
-			o.setValue(left - right);
-			break;
+			return left - right;
 		case MUL:
-			o.setValue(left * right);
-			break;
+			return left * right;
 		case DIV:
-			if (right == 0)
-				o.setValue(0);
-			o.setValue(left / right);
-			break;
+			return right == 0 ? 0 : left / right;
 		case MOD:
-			if (right == 0)
-				o.setValue(0);
-			o.setValue(left % right);
-			break;
+			return right == 0 ? 0 : left % right;
 		default:
 			throw new AssertionError();
-			
 		}
+	}
+	
+	@Override
+	public void evalUpdate(Update u) {
+		int index = evalExpr((Expression) u.left().right()); // Want expression in
+																// memnode
+		int right = evalExpr((Expression) u.right()); // Value that should be assigned
+														// to mem[index]
+		writeMem(index, right);
+	}
+	
+	@Override
+	public Outcome evalAction(Action a) {
+		TokenType t = a.getTokenType();
+		int arg = 0;
+		if (t == TokenType.TAG || t == TokenType.SERVE)
+			arg = evalExpr((Expression) a.right());
 		
+		return act(t, arg);
+	}
+	
+	@Override
+	public Outcome eval(ConditionNode c) {
+		Outcome o = new LogOutcome();
+		o.setValue(evalCondition(c) ? 1 : 0);
 		return o;
 	}
 	
 	@Override
-	public Outcome eval(FactorNode f) {
-		//Only run in case of - (factor)
+	public Outcome eval(Expression e) {
 		Outcome o = new LogOutcome();
-		
-		int right = f.right().critAccept(this).value();
-		o.setValue(-1 * right);
+		o.setValue(evalExpr(e));
 		return o;
 	}
 	
+	@Override
+	public Outcome eval(FactorNode f) {
+		return eval((Expression) f);
+	}
+	
 	@Override
 	public Outcome eval(SensorNode s) {
-		TokenType type = s.getTokenType();
-		Outcome o = new LogOutcome();
-		
-		if (type == TokenType.SMELL) {
-			o.setValue(critter.smell());
-			return o;
-		}
-		
-		int right = s.right().critAccept(this).value();
-		switch (type) {
-		case AHEAD:
-			o.setValue(critter.ahead(right, critter.getDir()));
-			return o;
-		case NEARBY:
-			o.setValue(critter.nearby(right));
-			return o;
-		case RANDOM:
-			Random r = new Random();
-			o.setValue(r.nextInt(right));
-			return o;
-		default:
-			throw new AssertionError();
-		}
-		
+		return eval((Expression) s);
 	}
 	
 	@Override
 	public Outcome eval(MemNode m) {
-		Outcome o = new LogOutcome();
-		
-		int right = m.right().critAccept(this).value();
-		if (right < 0 || right > critter.getMem().length)
-			o.setValue(0);
-		
-		o.setValue(critter.getMem()[right]);
-		return o;
+		return eval((Expression) m);
 	}
 	
 	@Override
 	public Outcome eval(NumNode n) {
-		Outcome o = new LogOutcome();
-		o.setValue(n.getNum());
-		return o;
+		return eval((Expression) n);
 	}
 	
 	@Override
 	public Outcome eval(Update u) {
-		int index = u.left().right().critAccept(this).value(); // Want expression in
-														// memnode
-		int right = u.right().critAccept(this).value(); // Value that should be assigned
-												// to mem[index]
-		
-		if (index == 7)
-			if (right > 0 && right < 99)
-				critter.getMem()[7] = right;
-			
-		if (index > 7 && index < critter.getMem().length)
-			critter.getMem()[index] = right;
-		
+		evalUpdate(u);
 		return new LogOutcome();
 	}
 	
 	@Override
 	public Outcome eval(Action a) {
-		TokenType t = a.getTokenType();
-		int c, r;
-		LogOutcome lo = new LogOutcome();
+		return evalAction(a);
+	}
+	
+	/**
+	 * Returns mem[{@code index}] of the critter, or 0 if {@code index} is out of
+	 * bounds
+	 * 
+	 * @param index
+	 *            Index of the memory slot to read
+	 * @return Value of the memory slot
+	 */
+	int readMem(int index) {
+		return critter.readMem(index);
+	}
+	
+	/**
+	 * Assigns {@code value} to mem[{@code index}] of the critter if that memory
+	 * slot is writable by a critter program. Those are the posture and the
+	 * slots from 8 on, which the critter's cached complexity and appearance do
+	 * not depend on, so they stay valid.
+	 * 
+	 * @param index
+	 *            Index of the memory slot to write
+	 * @param value
+	 *            Value to assign
+	 */
+	void writeMem(int index, int value) {
+		int[] mem = critter.getMem();
+		if (index == 7)
+			if (value > 0 && value < 99)
+				mem[7] = value;
+		
+		if (index > 7 && index < mem.length)
+			mem[index] = value;
+	}
+	
+	/**
+	 * Returns the value of sensor {@code type} with argument {@code arg}. Values
+	 * of nearby, ahead and smell are cached for the rest of the turn; ahead
+	 * with a distance of 0 or less sees the critter itself, whose appearance
+	 * changes with its posture, so it is never cached.
+	 * 
+	 * @param type
+	 *            Type of sensor (NEARBY, AHEAD, RANDOM or SMELL)
+	 * @param arg
+	 *            Evaluated argument of the sensor, ignored for SMELL
+	 * @return Value reported by the sensor
+	 */
+	int sense(TokenType type, int arg) {
+		switch (type) {
+		case SMELL:
+			if (smellStamp == turn) {
+				sensorHits++;
+				return smellValue;
+			}
+			sensorMisses++;
+			smellValue = critter.smell();
+			smellStamp = turn;
+			return smellValue;
+		case AHEAD:
+			if (arg <= 0 || arg >= AHEAD_CACHE) {
+				sensorMisses++;
+				return critter.ahead(arg, critter.getDir());
+			}
+			if (aheadStamp[arg] == turn) {
+				sensorHits++;
+				return aheadValue[arg];
+			}
+			sensorMisses++;
+			aheadValue[arg] = critter.ahead(arg, critter.getDir());
+			aheadStamp[arg] = turn;
+			return aheadValue[arg];
+		case NEARBY: {
+			int d = arg >= 0 && arg < 5 ? arg : 5; // Critter.nearby treats any other direction as 5
+			if (nearbyStamp[d] == turn) {
+				sensorHits++;
+				return nearbyValue[d];
+			}
+			sensorMisses++;
+			nearbyValue[d] = critter.nearby(d);
+			nearbyStamp[d] = turn;
+			return nearbyValue[d];
+		}
+		case RANDOM:
+			if (arg < 2)
+				return 0;
+			return critter.random(arg);
+		default:
+			throw new AssertionError();
+		}
+	}
+	
+	/**
+	 * Starts a new turn, invalidating the sensor values cached during the
+	 * previous one
+	 */
+	void beginTurn() {
+		turn++;
+		if (turn == 0) { // wrapped around, so old stamps could match again
+			Arrays.fill(nearbyStamp, 0);
+			Arrays.fill(aheadStamp, 0);
+			smellStamp = 0;
+			turn = 1;
+		}
+	}
+	
+	/**
+	 * Starts a new pass over the rules of a compiled program, invalidating the
+	 * memoized values of the previous pass
+	 * 
+	 * @param slots
+	 *            Number of memo slots the program uses
+	 */
+	void beginPass(int slots) {
+		if (memoStamp.length < slots) {
+			memoStamp = new int[slots];
+			memoValue = new int[slots];
+		}
+		
+		pass++;
+		if (pass == 0) { // wrapped around, so old stamps could match again
+			Arrays.fill(memoStamp, 0);
+			pass = 1;
+		}
+	}
+	
+	/**
+	 * Returns how many sensor reads were answered from the per-turn cache
+	 * 
+	 * @return Number of cache hits
+	 */
+	public long getSensorHits() {
+		return sensorHits;
+	}
+	
+	/**
+	 * Returns how many sensor reads of nearby, ahead or smell had to look at
+	 * the world
+	 * 
+	 * @return Number of cache misses
+	 */
+	public long getSensorMisses() {
+		return sensorMisses;
+	}
+	
+	/**
+	 * Returns this runner's operand stack for bytecode programs, grown to at
+	 * least {@code size} entries
+	 * 
+	 * @param size
+	 *            Minimum size of the stack
+	 * @return Operand stack
+	 */
+	int[] stack(int size) {
+		if (stack.length < size)
+			stack = new int[size];
+		return stack;
+	}
+	
+	/**
+	 * Sets whether turns only choose their action, leaving it to
+	 * {@link #commit()} to perform
+	 * 
+	 * @param deciding
+	 *            Whether turns only choose their action
+	 */
+	public void setDeciding(boolean deciding) {
+		this.deciding = deciding;
+		if (deciding)
+			chosen = null;
+	}
+	
+	/**
+	 * Returns whether turns only choose their action
+	 * 
+	 * @return Whether turns only choose their action
+	 */
+	public boolean isDeciding() {
+		return deciding;
+	}
+	
+	/**
+	 * Performs the action chosen by the last turn run while deciding
+	 * 
+	 * @return Outcome of the action, which is reused by the next action
+	 */
+	public Outcome commit() {
+		TokenType t = chosen;
+		chosen = null;
+		return t == null ? noAction() : act(t, chosenArg);
+	}
+	
+	/**
+	 * Performs the action performed by the last turn again, for a turn that
+	 * would choose the same action
+	 * 
+	 * @return Outcome of the action, which is reused by the next action
+	 */
+	public Outcome replay() {
+		return performed == null ? noAction() : act(performed, performedArg);
+	}
+	
+	/**
+	 * Returns the reusable outcome set to denote that no action was performed
+	 * 
+	 * @return Outcome that is not an action
+	 */
+	Outcome noAction() {
+		beginTurn();
+		performed = null;
+		outcome.set(-1, -1, false, false);
+		return outcome;
+	}
+	
+	/**
+	 * Performs action {@code t} for the critter, or only records it as the
+	 * chosen action while deciding
+	 * 
+	 * @param t
+	 *            Type of action
+	 * @param arg
+	 *            Evaluated argument of TAG and SERVE, ignored otherwise
+	 * @return Outcome of the action, which is reused by the next action
+	 */
+	Outcome act(TokenType t, int arg) {
+		beginTurn(); // the action changes the world
+		if (deciding) {
+			chosen = t;
+			chosenArg = arg;
+			outcome.set(-1, -1, false, true);
+			return outcome;
+		}
+		performed = t;
+		performedArg = arg;
+		
+		int c = -1;
+		int r = -1;
+		boolean mate = false;
 		
 		switch (t) {
 		case WAIT:
 			critter.waitAction();
-			lo = new LogOutcome();
 			break;
 		case FORWARD:
 			if (critter.forward()) {
 				c = critter.colAtDir(critter.getDir());
 				r = critter.rowAtDir(critter.getDir());
-				lo = new LogOutcome(c, r);
 			}
 			break;
 		case BACKWARD:
 			if (critter.backward()) {
 				c = critter.colAtDir((critter.getDir() + 3) % 6);
 				r = critter.rowAtDir((critter.getDir() + 3) % 6);
-				lo = new LogOutcome(c, r);
 			}
 			break;
 		case LEFT:
 			critter.turn(-1);
-			lo = new LogOutcome();
 			break;
 		case RIGHT:
 			critter.turn(1);
-			lo = new LogOutcome();
 			break;
 		case EAT:
 			if (critter.eat()) {
 				c = critter.colAtDir(critter.getDir());
 				r = critter.rowAtDir(critter.getDir());
-				lo = new LogOutcome(c, r); 
 			}
 			break;
 		case ATTACK:
 			if (critter.attack()) {
 				c = critter.colAtDir(critter.getDir());
 				r = critter.rowAtDir(critter.getDir());
-				lo = new LogOutcome(c, r); 
 			}
 			break;
 		case GROW:
 			critter.grow();
-			lo = new LogOutcome();
 			break;
 		case BUD:
 			if (critter.bud()) {
 				c = critter.colAtDir((critter.getDir() + 3) % 6);
 				r = critter.rowAtDir((critter.getDir() + 3) % 6);
-				lo = new LogOutcome(c, r);
 			}
 			break;
 		case MATE:
 			c = critter.colAtDir((critter.getDir() + 3) % 6);
 			r = critter.rowAtDir((critter.getDir() + 3) % 6);
-			lo = new LogOutcome(c, r, true);
+			mate = true;
 			break;
 		case TAG:
-			if (critter.tag(a.right().critAccept(this).value())) {
+			if (critter.tag(arg)) {
 				c = critter.colAtDir(critter.getDir());
 				r = critter.rowAtDir(critter.getDir());
-				lo = new LogOutcome(c, r); 
 			}
 			break;
 		default: // Action is serve
-			if (critter.serve(a.right().critAccept(this).value())) {
+			if (critter.serve(arg)) {
 				c = critter.colAtDir(critter.getDir());
 				r = critter.rowAtDir(critter.getDir());
-				lo = new LogOutcome(c, r);
 			}
 			break;
 		}
 		
-		lo.setAction(true);
-		return lo;
+		outcome.set(c, r, mate, true);
+		return outcome;
 	}
 }
@@ -0,0 +1,37 @@
+package interpret;
+
+import ast.Program;
+import exceptions.CompileError;
+
+/**
+ * The ways a simulator can execute critter programs.
+ */
+public enum Engine {
+	/** Walks the AST with a {@link CritterRunner} */
+	INTERPRETER,
+	/** Runs programs compiled by {@link ProgramCompiler} */
+	COMPILED,
+	/** Runs programs lowered to instruction streams by {@link BytecodeCompiler} */
+	BYTECODE;
+
+	/**
+	 * Translates program {@code p} for this engine
+	 *
+	 * @param p
+	 *            Program to translate
+	 * @return The executable form of {@code p}, or null if this engine
+	 *         interprets the AST directly
+	 * @throws CompileError
+	 *             if {@code p} cannot be translated
+	 */
+	public Executable compile(Program p) throws CompileError {
+		switch (this) {
+		case COMPILED:
+			return ProgramCompiler.compile(p);
+		case BYTECODE:
+			return BytecodeCompiler.compile(p);
+		default:
+			return null;
+		}
+	}
+}
@@ -0,0 +1,59 @@
+package interpret;
+
+import ast.Action;
+import ast.ConditionNode;
+import ast.Expression;
+import ast.Update;
+
+/**
+ * An interface for evaluating a critter program without allocating an
+ * {@link Outcome} for every node. Conditions and expressions evaluate to
+ * primitive values; only actions produce an outcome.
+ */
+public interface Evaluator {
+	/**
+	 * Execute program of critter until either the maximum number of rules per
+	 * turn is reached or some rule whose command contains an action is
+	 * executed.
+	 * 
+	 * @return a result containing the action to be performed; the result is not
+	 *         an action if the maximum number of rules per turn was exceeded.
+	 */
+	Outcome interpret();
+
+	/**
+	 * Evaluate given condition
+	 * 
+	 * @param c
+	 *            Condition to evaluate
+	 * @return Whether c holds
+	 */
+	public boolean evalCondition(ConditionNode c);
+
+	/**
+	 * Evaluate given expression
+	 * 
+	 * @param e
+	 *            Expression to evaluate
+	 * @return Integer result of evaluating e
+	 */
+	public int evalExpr(Expression e);
+
+	/**
+	 * Evaluate given update
+	 * 
+	 * @param u
+	 *            Update to evaluate
+	 */
+	public void evalUpdate(Update u);
+
+	/**
+	 * Evaluate given action
+	 * 
+	 * @param a
+	 *            Action to evaluate
+	 * @return Outcome of the action. The outcome may be reused by the next
+	 *         action evaluated, so it must be consumed before then.
+	 */
+	public Outcome evalAction(Action a);
+}
@@ -0,0 +1,19 @@
+package interpret;
+
+/**
+ * A critter program translated into a form that can be run without
+ * interpreting its AST.
+ */
+public interface Executable {
+	/**
+	 * Executes rules for the critter of {@code runner} until either the maximum
+	 * number of rules per turn is reached or some rule whose command contains an
+	 * action is executed.
+	 *
+	 * @param runner
+	 *            Runner of the critter whose turn it is
+	 * @return Outcome of the action performed, which is not an action if the
+	 *         maximum number of rules per turn was exceeded
+	 */
+	Outcome run(CritterRunner runner);
+}
@@ -49,6 +49,25 @@ public class LogOutcome implements Outcome {
 		action = mate;
 	}
 	
+	/**
+	 * Reuses this LogOutcome for a new result
+	 * @param c
+	 * 		Column of hex changed, or -1
+	 * @param r
+	 * 		Row of hex changed, or -1
+	 * @param mate
+	 * 		Whether critter action was mate
+	 * @param action
+	 * 		Whether outcome is an action
+	 */
+	void set(int c, int r, boolean mate, boolean action) {
+		col = c;
+		row = r;
+		this.mate = mate;
+		this.action = action;
+		value = 0;
+	}
+	
 	/**
 	 * Returns whether a hex other than the critter's
 	 * original hex was changed
@@ -0,0 +1,346 @@
+package interpret;
+
+import java.util.ArrayList;
+
+import ast.Action;
+import ast.BinaryNode;
+import ast.Command;
+import ast.ConditionNode;
+import ast.ConjunctionNode;
+import ast.Expression;
+import ast.FactorNode;
+import ast.MemNode;
+import ast.NumNode;
+import ast.Program;
+import ast.RelationNode;
+import ast.Rule;
+import ast.SensorNode;
+import ast.Update;
+import exceptions.CompileError;
+import parse.TokenType;
+
+/**
+ * A static optimizer for critter programs. It builds an equivalent copy of a
+ * program in which constant subexpressions are folded, conditions that are
+ * statically true or false are simplified, updates that can never write are
+ * removed and rules that can never fire are dropped. The original program is
+ * left untouched, so it can still be printed and mutated.
+ * <p>
+ * A subexpression whose value does not matter, such as {@code x} in
+ * {@code x * 0}, is only dropped if it does not draw from {@code random}, so
+ * an optimized program draws the same random numbers as the original.
+ */
+public class Optimizer {
+
+	private final ArrayList<Rule> rules;
+	private final ArrayList<Rule> origins;
+	private final Rule lastRule;
+
+	private Optimizer(Program p) throws CompileError {
+		rules = new ArrayList<Rule>();
+		origins = new ArrayList<Rule>();
+		ArrayList<Rule> original = p.getRules();
+		lastRule = original.isEmpty() ? null : original.get(original.size() - 1);
+
+		for (Rule r : original) {
+			ConditionNode cond = condition(r.getCond());
+			Boolean value = constant(cond);
+			if (value != null && !value)
+				continue; // can never fire
+
+			ArrayList<Update> updates = new ArrayList<Update>();
+			for (Update u : r.getUpdates()) {
+				Update folded = update(u);
+				if (folded != null)
+					updates.add(folded);
+			}
+
+			Command comm;
+			if (r.getComm() instanceof Update) {
+				comm = update((Update) r.getComm());
+				if (comm == null) // keep a command that does nothing
+					comm = new Update(new MemNode(new NumNode("0")), new NumNode("0"));
+			} else if (r.getComm() instanceof Action) {
+				Action a = (Action) r.getComm();
+				comm = a.right() == null ? new Action(a.getTokenType(), null)
+						: new Action(a.getTokenType(), expr(a.right()));
+			} else
+				throw new CompileError();
+
+			rules.add(new Rule(cond, updates, comm));
+			origins.add(r);
+
+			if (value != null)
+				break; // always fires, so later rules are never reached
+		}
+	}
+
+	/**
+	 * Optimizes program {@code p}
+	 *
+	 * @param p
+	 *            Program to optimize
+	 * @return The optimized form of {@code p}
+	 * @throws CompileError
+	 *             if {@code p} contains a malformed node
+	 */
+	public static Optimizer optimize(Program p) throws CompileError {
+		return new Optimizer(p);
+	}
+
+	/**
+	 * Returns the optimized rules, in the order they are tried
+	 *
+	 * @return Optimized rules
+	 */
+	public ArrayList<Rule> getRules() {
+		return rules;
+	}
+
+	/**
+	 * Returns the rule of the original program that optimized rule {@code i}
+	 * was built from
+	 *
+	 * @param i
+	 *            Index of an optimized rule
+	 * @return Original rule
+	 */
+	public Rule originOf(int i) {
+		return origins.get(i);
+	}
+
+	/**
+	 * Returns the last rule of the original program, which is the last rule
+	 * tried when no rule matches
+	 *
+	 * @return Last original rule, or null if the program has no rules
+	 */
+	public Rule lastRule() {
+		return lastRule;
+	}
+
+	/**
+	 * Returns the value of condition {@code c} if it is constant
+	 *
+	 * @param c
+	 *            An optimized condition
+	 * @return Value of {@code c}, or null if it is not constant
+	 */
+	static Boolean constant(ConditionNode c) {
+		if (!(c instanceof RelationNode) || !(c.left() instanceof NumNode) || !(c.right() instanceof NumNode))
+			return null;
+
+		int l = ((NumNode) c.left()).getNum();
+		int r = ((NumNode) c.right()).getNum();
+		switch (c.getTokenType()) {
+		case LT:
+			return l < r;
+		case LE:
+			return l <= r;
+		case EQ:
+			return l == r;
+		case GE:
+			return l >= r;
+		case GT:
+			return l > r;
+		case NE:
+			return l != r;
+		default:
+			return null;
+		}
+	}
+
+	/**
+	 * Returns a condition that is constantly {@code value}
+	 */
+	private static ConditionNode constantCondition(boolean value) {
+		return new RelationNode(new NumNode("1"), value ? TokenType.EQ : TokenType.NE, new NumNode("1"));
+	}
+
+	/**
+	 * Returns an optimized copy of condition {@code c}
+	 */
+	private static ConditionNode condition(BinaryNode c) throws CompileError {
+		if (!(c instanceof ConditionNode))
+			throw new CompileError();
+
+		TokenType t = c.getTokenType();
+		if (t == TokenType.OR || t == TokenType.AND) {
+			ConditionNode l = condition(c.left());
+			ConditionNode r = condition(c.right());
+			Boolean lv = constant(l);
+			Boolean rv = constant(r);
+			boolean absorbing = t == TokenType.OR; // value that decides the result
+
+			if (lv != null && lv == absorbing) // the right side is never evaluated
+				return constantCondition(absorbing);
+			if (rv != null && rv == absorbing && !drawsRandom(l))
+				return constantCondition(absorbing);
+			if (rv != null && rv != absorbing)
+				return l;
+			if (lv != null)
+				return r;
+			return t == TokenType.OR ? new ConditionNode(l, t, r) : new ConjunctionNode(l, t, r);
+		}
+
+		Expression l = expr(c.left());
+		Expression r = expr(c.right());
+		RelationNode folded = new RelationNode(l, t, r);
+		Boolean value = constant(folded);
+		if (value != null)
+			return constantCondition(value);
+		return folded;
+	}
+
+	/**
+	 * Returns the value of expression {@code e} if it is a literal
+	 */
+	private static Integer literal(Expression e) {
+		return e instanceof NumNode ? ((NumNode) e).getNum() : null;
+	}
+
+	/**
+	 * Returns an optimized copy of expression {@code e}
+	 */
+	private static Expression expr(BinaryNode e) throws CompileError {
+		if (e instanceof NumNode) {
+			try {
+				((NumNode) e).getNum();
+			} catch (NumberFormatException n) {
+				throw new CompileError();
+			}
+			return ((NumNode) e).clone();
+		}
+
+		if (e instanceof MemNode) {
+			Expression index = expr(e.right());
+			Integer i = literal(index);
+			if (i != null && i < 0)
+				return new NumNode("0");
+			return new MemNode(index);
+		}
+
+		if (e instanceof SensorNode) {
+			if (e.getTokenType() == TokenType.SMELL)
+				return new SensorNode(null, TokenType.SMELL, null);
+
+			Expression arg = expr(e.right());
+			Integer a = literal(arg);
+			if (e.getTokenType() == TokenType.RANDOM && a != null && a < 2)
+				return new NumNode("0");
+			return new SensorNode(null, e.getTokenType(), arg);
+		}
+
+		if (e instanceof FactorNode) {
+			// Only run in case of - (factor)
+			Expression r = expr(e.right());
+			Integer v = literal(r);
+			if (v != null)
+				return new NumNode(-v + "");
+			return new FactorNode(null, TokenType.MINUS, r);
+		}
+
+		if (!(e instanceof Expression))
+			throw new CompileError();
+
+		Expression l = expr(e.left());
+		Expression r = expr(e.right());
+		Integer lv = literal(l);
+		Integer rv = literal(r);
+		TokenType t = e.getTokenType();
+
+		if (lv != null && rv != null) {
+			switch (t) {
+			case PLUS:
+				return new NumNode(lv + rv + "");
+			case MINUS:
+				return new NumNode(lv - rv + "");
+			case MUL:
+				return new NumNode(lv * rv + "");
+			case DIV:
+				return new NumNode((rv == 0 ? 0 : lv / rv) + "");
+			case MOD:
+				return new NumNode((rv == 0 ? 0 : lv % rv) + "");
+			default:
+				break;
+			}
+		}
+
+		switch (t) {
+		case PLUS:
+			if (isLiteral(lv, 0))
+				return r;
+			if (isLiteral(rv, 0))
+				return l;
+			break;
+		case MINUS:
+			if (isLiteral(rv, 0))
+				return l;
+			break;
+		case MUL:
+			if (isLiteral(lv, 0) && !drawsRandom(r) || isLiteral(rv, 0) && !drawsRandom(l))
+				return new NumNode("0");
+			if (isLiteral(lv, 1))
+				return r;
+			if (isLiteral(rv, 1))
+				return l;
+			break;
+		case DIV:
+			// x / 0 is 0 as well
+			if (isLiteral(lv, 0) && !drawsRandom(r) || isLiteral(rv, 0) && !drawsRandom(l))
+				return new NumNode("0");
+			if (isLiteral(rv, 1))
+				return l;
+			break;
+		case MOD:
+			if (isLiteral(lv, 0) && !drawsRandom(r) || (isLiteral(rv, 0) || isLiteral(rv, 1)) && !drawsRandom(l))
+				return new NumNode("0");
+			break;
+		default:
+			break;
+		}
+
+		return new Expression(l, t, r);
+	}
+
+	private static boolean isLiteral(Integer v, int value) {
+		return v != null && v == value;
+	}
+
+	/**
+	 * Returns true if {@code n} is a {@code random} sensor
+	 */
+	static boolean isRandom(BinaryNode n) {
+		return n instanceof SensorNode && n.getTokenType() == TokenType.RANDOM;
+	}
+
+	/**
+	 * Returns true if evaluating {@code n} may draw from {@code random}, so it
+	 * cannot be left out without changing the numbers drawn later
+	 */
+	private static boolean drawsRandom(BinaryNode n) {
+		if (n == null)
+			return false;
+		return isRandom(n) || drawsRandom(n.left()) || drawsRandom(n.right());
+	}
+
+	/**
+	 * Returns an optimized copy of update {@code u}, or null if the update can
+	 * never write to memory and draws no random number
+	 */
+	private static Update update(Update u) throws CompileError {
+		if (!(u.left() instanceof MemNode))
+			throw new CompileError();
+
+		Expression index = expr(u.left().right());
+		Expression value = expr(u.right());
+		Integer i = literal(index);
+		Integer v = literal(value);
+
+		if (i != null && i < 7 && !drawsRandom(value))
+			return null;
+		if (i != null && i == 7 && v != null && (v <= 0 || v >= 99))
+			return null;
+		return new Update(new MemNode(index), value);
+	}
+}
@@ -0,0 +1,348 @@
+package interpret;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+
+import ast.Action;
+import ast.BinaryNode;
+import ast.Command;
+import ast.ConditionNode;
+import ast.Expression;
+import ast.FactorNode;
+import ast.MemNode;
+import ast.NumNode;
+import ast.Program;
+import ast.Rule;
+import ast.SensorNode;
+import ast.Update;
+import exceptions.CompileError;
+import interpret.CompiledProgram.BoolCode;
+import interpret.CompiledProgram.IntCode;
+import interpret.CompiledProgram.UpdateCode;
+import parse.TokenType;
+
+/**
+ * Compiles critter programs into {@link CompiledProgram}s. Programs are first
+ * simplified by the {@link Optimizer}; then every node of the AST is
+ * translated once into an evaluator that is specialized for the node's type
+ * and operator, so running the program no longer needs double dispatch
+ * through {@code critAccept}.
+ * <p>
+ * Subexpressions and relations that occur more than once across the
+ * conditions of a program are given a memo slot, so each is evaluated at most
+ * once per pass. Conditions cannot write memory, so a memoized value stays
+ * valid until the pass that computed it ends; updates and action arguments
+ * run after memory may have changed and are never memoized. Subexpressions
+ * that draw a random number are never shared.
+ */
+public class ProgramCompiler {
+
+	private final HashMap<String, Integer> uses; // occurrences of each condition subtree
+	private final HashMap<String, Integer> slots; // memo slot of each shared subtree
+
+	private ProgramCompiler() {
+		uses = new HashMap<String, Integer>();
+		slots = new HashMap<String, Integer>();
+	}
+
+	/**
+	 * Compiles program {@code p}
+	 *
+	 * @param p
+	 *            Program to compile
+	 * @return The compiled program
+	 * @throws CompileError
+	 *             if {@code p} contains a node that cannot be compiled
+	 */
+	public static CompiledProgram compile(Program p) throws CompileError {
+		ProgramCompiler pc = new ProgramCompiler();
+		Optimizer opt = Optimizer.optimize(p);
+		ArrayList<Rule> ruleList = opt.getRules();
+		for (Rule r : ruleList)
+			pc.count(r.getCond());
+
+		int n = ruleList.size();
+		Rule[] rules = new Rule[n];
+		BoolCode[] conditions = new BoolCode[n];
+		UpdateCode[][] updates = new UpdateCode[n][];
+		UpdateCode[] updateCommands = new UpdateCode[n];
+		TokenType[] actions = new TokenType[n];
+		IntCode[] actionArgs = new IntCode[n];
+
+		for (int i = 0; i < n; i++) {
+			Rule r = ruleList.get(i);
+			rules[i] = opt.originOf(i);
+			conditions[i] = pc.compileCondition(r.getCond());
+
+			ArrayList<Update> us = r.getUpdates();
+			updates[i] = new UpdateCode[us.size()];
+			for (int j = 0; j < us.size(); j++)
+				updates[i][j] = pc.compileUpdate(us.get(j));
+
+			Command comm = r.getComm();
+			if (comm instanceof Update) {
+				updateCommands[i] = pc.compileUpdate((Update) comm);
+			} else if (comm instanceof Action) {
+				actions[i] = comm.getTokenType();
+				if (actions[i] == TokenType.TAG || actions[i] == TokenType.SERVE)
+					actionArgs[i] = pc.compileExpr(comm.right(), false);
+			} else
+				throw new CompileError();
+		}
+
+		return new CompiledProgram(rules, opt.lastRule(), conditions, updates, updateCommands, actions, actionArgs,
+				pc.slots.size());
+	}
+
+	/**
+	 * Returns a key that is equal for structurally equal subtrees, or null if
+	 * {@code n} draws a random number. The key is fully parenthesized, unlike
+	 * {@code toString}, so different trees never share a key.
+	 */
+	private static String key(BinaryNode n) {
+		if (n == null)
+			return "";
+		if (n instanceof NumNode)
+			return ((NumNode) n).getNum() + "";
+		if (Optimizer.isRandom(n))
+			return null;
+
+		String l = key(n.left());
+		String r = key(n.right());
+		if (l == null || r == null)
+			return null;
+
+		String kind = n instanceof MemNode ? "mem" : n instanceof SensorNode ? "sensor" : "";
+		return "(" + l + " " + kind + n.getTokenType() + " " + r + ")";
+	}
+
+	/**
+	 * Returns true if {@code n} is cheap enough to evaluate that memoizing it
+	 * would not pay off
+	 */
+	private static boolean trivial(BinaryNode n) {
+		return n instanceof NumNode || n instanceof MemNode && n.right() instanceof NumNode;
+	}
+
+	/**
+	 * Counts the occurrences of the subtrees of condition {@code c}
+	 */
+	private void count(BinaryNode c) {
+		if (c == null)
+			return;
+
+		String k = key(c);
+		if (k != null && !trivial(c)) {
+			Integer u = uses.get(k);
+			uses.put(k, u == null ? 1 : u + 1);
+		}
+		count(c.left());
+		count(c.right());
+	}
+
+	/**
+	 * Returns the memo slot of {@code n}, or -1 if it is not shared
+	 */
+	private int slot(BinaryNode n) {
+		String k = key(n);
+		if (k == null || trivial(n))
+			return -1;
+
+		Integer u = uses.get(k);
+		if (u == null || u < 2)
+			return -1;
+
+		Integer slot = slots.get(k);
+		if (slot == null) {
+			slot = slots.size();
+			slots.put(k, slot);
+		}
+		return slot;
+	}
+
+	/**
+	 * Compiles condition {@code c}, memoizing it and its subexpressions if they
+	 * are shared
+	 *
+	 * @param c
+	 *            Condition to compile
+	 * @return Evaluator of the condition
+	 * @throws CompileError
+	 *             if {@code c} cannot be compiled
+	 */
+	BoolCode compileCondition(BinaryNode c) throws CompileError {
+		BoolCode code = compileRawCondition(c);
+		int slot = slot(c);
+		if (slot < 0)
+			return code;
+
+		return cr -> {
+			if (cr.memoStamp[slot] == cr.pass)
+				return cr.memoValue[slot] != 0;
+			boolean value = code.eval(cr);
+			cr.memoValue[slot] = value ? 1 : 0;
+			cr.memoStamp[slot] = cr.pass;
+			return value;
+		};
+	}
+
+	/**
+	 * Compiles condition {@code c} without memoizing it
+	 */
+	private BoolCode compileRawCondition(BinaryNode c) throws CompileError {
+		if (!(c instanceof ConditionNode))
+			throw new CompileError();
+
+		switch (c.getTokenType()) {
+		case OR: {
+			BoolCode l = compileCondition(c.left());
+			BoolCode r = compileCondition(c.right());
+			return cr -> l.eval(cr) || r.eval(cr);
+		}
+		case AND: {
+			BoolCode l = compileCondition(c.left());
+			BoolCode r = compileCondition(c.right());
+			return cr -> l.eval(cr) && r.eval(cr);
+		}
+		default:
+			break;
+		}
+
+		Boolean value = Optimizer.constant((ConditionNode) c);
+		if (value != null)
+			return value ? cr -> true : cr -> false;
+
+		IntCode l = compileExpr(c.left(), true);
+		IntCode r = compileExpr(c.right(), true);
+		switch (c.getTokenType()) {
+		case LT:
+			return cr -> l.eval(cr) < r.eval(cr);
+		case LE:
+			return cr -> l.eval(cr) <= r.eval(cr);
+		case GE:
+			return cr -> l.eval(cr) >= r.eval(cr);
+		case GT:
+			return cr -> l.eval(cr) > r.eval(cr);
+		case NE:
+			return cr -> l.eval(cr) != r.eval(cr);
+		case EQ:
+			return cr -> l.eval(cr) == r.eval(cr);
+		default:
+			throw new CompileError();
+		}
+	}
+
+	/**
+	 * Compiles expression {@code e}
+	 *
+	 * @param e
+	 *            Expression to compile
+	 * @param memoize
+	 *            Whether shared subexpressions may be memoized, which is only
+	 *            allowed within conditions
+	 * @return Evaluator of the expression
+	 * @throws CompileError
+	 *             if {@code e} cannot be compiled
+	 */
+	IntCode compileExpr(BinaryNode e, boolean memoize) throws CompileError {
+		IntCode code = compileRawExpr(e, memoize);
+		int slot = memoize ? slot(e) : -1;
+		if (slot < 0)
+			return code;
+
+		return cr -> {
+			if (cr.memoStamp[slot] == cr.pass)
+				return cr.memoValue[slot];
+			int value = code.eval(cr);
+			cr.memoValue[slot] = value;
+			cr.memoStamp[slot] = cr.pass;
+			return value;
+		};
+	}
+
+	/**
+	 * Compiles expression {@code e} without memoizing it
+	 */
+	private IntCode compileRawExpr(BinaryNode e, boolean memoize) throws CompileError {
+		if (e instanceof NumNode) {
+			int value;
+			try {
+				value = ((NumNode) e).getNum();
+			} catch (NumberFormatException n) {
+				throw new CompileError();
+			}
+			return cr -> value;
+		}
+
+		if (e instanceof MemNode) {
+			IntCode index = compileExpr(e.right(), memoize);
+			return cr -> cr.readMem(index.eval(cr));
+		}
+
+		if (e instanceof SensorNode) {
+			TokenType type = e.getTokenType();
+			if (type == TokenType.SMELL)
+				return cr -> cr.sense(TokenType.SMELL, 0);
+			if (type != TokenType.NEARBY && type != TokenType.AHEAD && type != TokenType.RANDOM)
+				throw new CompileError();
+
+			IntCode arg = compileExpr(e.right(), memoize);
+			return cr -> cr.sense(type, arg.eval(cr));
+		}
+
+		if (e instanceof FactorNode) {
+			// Only run in case of - (factor)
+			IntCode r = compileExpr(e.right(), memoize);
+			return cr -> -r.eval(cr);
+		}
+
+		if (!(e instanceof Expression))
+			throw new CompileError();
+
+		IntCode l = compileExpr(e.left(), memoize);
+		IntCode r = compileExpr(e.right(), memoize);
+		switch (e.getTokenType()) {
+		case PLUS:
+			return cr -> l.eval(cr) + r.eval(cr);
+		case MINUS:
+			return cr -> l.eval(cr) - r.eval(cr);
+		case MUL:
+			return cr -> l.eval(cr) * r.eval(cr);
+		case DIV:
+			return cr -> {
+				int left = l.eval(cr);
+				int right = r.eval(cr);
+				return right == 0 ? 0 : left / right;
+			};
+		case MOD:
+			return cr -> {
+				int left = l.eval(cr);
+				int right = r.eval(cr);
+				return right == 0 ? 0 : left % right;
+			};
+		default:
+			throw new CompileError();
+		}
+	}
+
+	/**
+	 * Compiles update {@code u}
+	 *
+	 * @param u
+	 *            Update to compile
+	 * @return Evaluator of the update
+	 * @throws CompileError
+	 *             if {@code u} cannot be compiled
+	 */
+	UpdateCode compileUpdate(Update u) throws CompileError {
+		if (!(u.left() instanceof MemNode))
+			throw new CompileError();
+
+		IntCode index = compileExpr(u.left().right(), false);
+		IntCode value = compileExpr(u.right(), false);
+		return cr -> {
+			int i = index.eval(cr);
+			cr.writeMem(i, value.eval(cr));
+		};
+	}
+}
@@ -2,7 +2,10 @@ package main;
 
 import java.io.FileNotFoundException;
 import java.io.FileReader;
+import java.util.Random;
 
+import ast.Mutation;
+import ast.MutationFactory;
 import ast.Program;
 import parse.Parser;
 import parse.ParserFactory;
@@ -11,6 +14,7 @@ public class ParseAndMutateApp {
 
 	public static void main(String[] args) {
 		int n = 0;
+		boolean bench = false;
 		String file;
 		try {
 			if (args.length == 1) {
@@ -18,6 +22,10 @@ public class ParseAndMutateApp {
 			} else if (args.length == 3 && args[0].equals("--mutate")) {
 				n = parsePositive(args[1]);
 				file = args[2];
+			} else if (args.length == 3 && args[0].equals("--bench")) {
+				n = parsePositive(args[1]);
+				file = args[2];
+				bench = true;
 			} else {
 				throw new IllegalArgumentException();
 			}
@@ -26,6 +34,10 @@ public class ParseAndMutateApp {
 				FileReader fr = new FileReader(file);
 				Parser parser = ParserFactory.getParser();
 				Program p = parser.parse(fr);
+				if (bench) {
+					benchmark(p, n);
+					return;
+				}
 				StringBuilder sb = new StringBuilder();
 				System.out.println(p.prettyPrint(sb));
 				
@@ -40,10 +52,51 @@ public class ParseAndMutateApp {
 			}
 			
 		} catch (IllegalArgumentException | ArrayIndexOutOfBoundsException e) {
-            System.out.println("Usage:\n" + "  <input_file>\n" + " --mutate <n> <input_file");
+            System.out.println("Usage:\n" + "  <input_file>\n" + " --mutate <n> <input_file\n" + " --bench <n> <input_file>");
 		}
 	}
 
+	/**
+	 * Prints the throughput of {@code n} mutations of program {@code p}, done
+	 * by the mutation engine and by picking random nodes and mutations until
+	 * one succeeds
+	 * 
+	 * @param p
+	 *            Program to mutate
+	 * @param n
+	 *            Number of mutations to time
+	 */
+	public static void benchmark(Program p, int n) {
+		Mutation[] mutations = { MutationFactory.getRemove(), MutationFactory.getSwap(), MutationFactory.getReplace(),
+				MutationFactory.getTransform(), MutationFactory.getInsert(), MutationFactory.getDuplicate() };
+		Random r = new Random();
+
+		long start = System.nanoTime();
+		for (int i = 0; i < n; i++)
+			p.mutate();
+		report("engine", n, System.nanoTime() - start);
+
+		start = System.nanoTime();
+		int attempts = 0;
+		for (int i = 0; i < n; i++) {
+			Program copy = null;
+			while (copy == null) {
+				attempts++;
+				try {
+					copy = p.mutate(r.nextInt(p.size()), mutations[r.nextInt(mutations.length)]);
+				} catch (RuntimeException e) {
+					// some node mutations fail on malformed subtrees
+				}
+			}
+		}
+		report("retry (" + attempts + " attempts)", n, System.nanoTime() - start);
+	}
+
+	private static void report(String name, int n, long nanos) {
+		System.out.printf("%s: %d mutations in %.1f ms, %.0f per second%n", name, n, nanos / 1e6,
+				n == 0 ? 0.0 : n / (nanos / 1e9));
+	}
+
 	/**
      * Parses {@code str} to an integer.
      * 
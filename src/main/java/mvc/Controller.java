@@ -151,7 +151,7 @@ public class Controller {
 			public void handle(ActionEvent e) {
 				if (curFile != null) {
 					world = new SimulatorImpl(curFile.toString());
-					if (world.getWorld() == null) {
+					if (world.getColumns() == 0) {
 						messages.appendText("Not a valid world\n");
 						return;
 					}
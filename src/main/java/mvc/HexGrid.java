@@ -58,8 +58,8 @@ public class HexGrid extends Canvas {
 	 * 			Place for displaying info about critters.
 	 */
 	public HexGrid(Simulator sim, TextArea infoBox) {
-		COLUMNS = sim.getWorld().length;
-		ROWS = sim.getWorld()[0].length;
+		COLUMNS = sim.getColumns();
+		ROWS = sim.getRows();
 		this.sim = sim;
 		this.infoArea = infoBox;
 		
@@ -1,41 +1,165 @@
 package parse;
 
 import java.io.BufferedReader;
-import java.io.FileReader;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * The constants of the rules of a world. The defaults are parsed once from
+ * {@code "constants.txt"}, and a world may be given other values for some of
+ * them with {@link #with(Map)}. A Constants object never changes, so it can be
+ * shared by any number of worlds, and the simulation reads its fields
+ * directly.
+ */
+public final class Constants {
+
+	// Constants that are part of how sensors report the world, which the
+	// engines rely on, so they cannot be overridden
+	private static final String[] FIXED = { "MAX_SMELL_DISTANCE", "ROCK_VALUE" };
+
+	// Most hexes in the COLUMNS by ROWS rectangle of a world, so that tables
+	// with an entry for each direction of each hex fit in an array
+	private static final long MAX_HEXES = 1L << 28;
+
+	private static Constants defaults; // parsed on first use
+
+	public final double baseDamage;
+	public final double damageInc;
+	public final int energyPerSize;
+	public final int foodPerSize;
+	public final int maxSmellDistance;
+	public final int rockValue;
+	public final int columns;
+	public final int rows;
+	public final int maxRulesPerTurn;
+	public final int solarFlux;
+	public final int moveCost;
+	public final int attackCost;
+	public final int growCost;
+	public final int budCost;
+	public final int mateCost;
+	public final int ruleCost;
+	public final int abilityCost;
+	public final int initialEnergy;
+	public final int minMemory;
+
+	private final Map<String, Double> values; // every constant by name
 
-public class Constants {
-	HashMap<String, Double> constants;
-	
 	/**
-	 * Constructs a Constants object, parsing the {@code "constants.txt"} file
+	 * Constructs the constants with the values {@code values}, which has every
+	 * constant
 	 */
-	public Constants() {
-		constants = new HashMap<String, Double>();
-		try {
-			InputStream in = getClass().getResourceAsStream("/resources/constants.txt");
-			InputStreamReader inReader = new InputStreamReader(in);
-			BufferedReader br = new BufferedReader(inReader);
-			while (br.ready()) {
-				String s = br.readLine();
+	private Constants(HashMap<String, Double> values) {
+		this.values = Collections.unmodifiableMap(values);
+		baseDamage = values.get("BASE_DAMAGE");
+		damageInc = values.get("DAMAGE_INC");
+		energyPerSize = values.get("ENERGY_PER_SIZE").intValue();
+		foodPerSize = values.get("FOOD_PER_SIZE").intValue();
+		maxSmellDistance = values.get("MAX_SMELL_DISTANCE").intValue();
+		rockValue = values.get("ROCK_VALUE").intValue();
+		columns = values.get("COLUMNS").intValue();
+		rows = values.get("ROWS").intValue();
+		maxRulesPerTurn = values.get("MAX_RULES_PER_TURN").intValue();
+		solarFlux = values.get("SOLAR_FLUX").intValue();
+		moveCost = values.get("MOVE_COST").intValue();
+		attackCost = values.get("ATTACK_COST").intValue();
+		growCost = values.get("GROW_COST").intValue();
+		budCost = values.get("BUD_COST").intValue();
+		mateCost = values.get("MATE_COST").intValue();
+		ruleCost = values.get("RULE_COST").intValue();
+		abilityCost = values.get("ABILITY_COST").intValue();
+		initialEnergy = values.get("INITIAL_ENERGY").intValue();
+		minMemory = values.get("MIN_MEMORY").intValue();
+	}
+
+	/**
+	 * Returns the constants of {@code "constants.txt"}, parsing the file the
+	 * first time
+	 *
+	 * @return Default constants
+	 */
+	public static synchronized Constants defaults() {
+		if (defaults == null)
+			defaults = new Constants(parse());
+		return defaults;
+	}
+
+	/**
+	 * Returns the constants in {@code "constants.txt"} by name
+	 */
+	private static HashMap<String, Double> parse() {
+		HashMap<String, Double> values = new HashMap<String, Double>();
+		InputStream in = Constants.class.getResourceAsStream("/resources/constants.txt");
+		if (in == null)
+			throw new IllegalStateException("No constants.txt file found");
+		try (BufferedReader br = new BufferedReader(new InputStreamReader(in))) {
+			String s;
+			while ((s = br.readLine()) != null) {
 				String[] tokens = s.split(" ");
-				String name = tokens[0];
-				Double value = Double.parseDouble(tokens[1]);
-				constants.put(name, value);
+				if (tokens.length < 2)
+					continue;
+				values.put(tokens[0], Double.parseDouble(tokens[1]));
 			}
 		} catch (IOException e) {
-			System.out.println("No constants.txt file found");
+			throw new IllegalStateException("Could not read constants.txt", e);
+		}
+		return values;
+	}
+
+	/**
+	 * Returns these constants with the values in {@code overrides} in place of
+	 * those of the same names
+	 *
+	 * @param overrides
+	 *            Values of constants by name, such as {@code "MOVE_COST"}
+	 * @return Constants with the overrides, this object if there are none
+	 * @throws IllegalArgumentException
+	 *             If a name is not that of a constant, a value is not a number
+	 *             the constant can have, a constant that cannot be overridden
+	 *             is given a different value, or the world would be too large
+	 */
+	public Constants with(Map<String, Double> overrides) {
+		if (overrides == null || overrides.isEmpty())
+			return this;
+
+		HashMap<String, Double> changed = new HashMap<String, Double>(values);
+		for (Map.Entry<String, Double> e : overrides.entrySet()) {
+			String name = e.getKey();
+			Double value = e.getValue();
+			Double old = values.get(name);
+			if (old == null)
+				throw new IllegalArgumentException("Unknown constant " + name);
+			if (value == null || value.isNaN() || value.isInfinite())
+				throw new IllegalArgumentException("Bad value for " + name);
+			if (!name.equals("BASE_DAMAGE") && !name.equals("DAMAGE_INC")
+					&& (value != Math.rint(value) || Math.abs(value) > Integer.MAX_VALUE))
+				throw new IllegalArgumentException(name + " must be an integer");
+			for (String fixed : FIXED)
+				if (name.equals(fixed) && !value.equals(old))
+					throw new IllegalArgumentException(name + " cannot be changed");
+			changed.put(name, value);
 		}
+		if (changed.get("COLUMNS") < 1 || changed.get("ROWS") < 1)
+			throw new IllegalArgumentException("The world must have a column and a row");
+		if (changed.get("COLUMNS") * changed.get("ROWS") > MAX_HEXES)
+			throw new IllegalArgumentException("The world can have at most " + MAX_HEXES + " columns times rows");
+		if (changed.get("MIN_MEMORY") < 8)
+			throw new IllegalArgumentException("MIN_MEMORY must be at least 8");
+		if (changed.get("MAX_RULES_PER_TURN") < 1)
+			throw new IllegalArgumentException("MAX_RULES_PER_TURN must be at least 1");
+		return new Constants(changed);
 	}
-	
+
 	/**
-	 * Returns a HashMap containing the parsed constants
-	 * @return HashMap of constants
+	 * Returns the value of every constant by name
+	 *
+	 * @return Unmodifiable map of constants
 	 */
-	public HashMap<String, Double> getConstants() {
-		return constants;
+	public Map<String, Double> getConstants() {
+		return values;
 	}
 }
@@ -6,6 +6,8 @@ import static spark.Spark.post;
 import static spark.Spark.delete;
 
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.SplittableRandom;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 import com.google.gson.Gson;
@@ -13,16 +15,19 @@ import com.google.gson.Gson;
 import ast.Program;
 import ast.Rule;
 import client.ClientGrid.HexInfo;
+import parse.Constants;
 import simulator.Critter;
 import simulator.Hex;
 import simulator.ServerSimulator;
+import simulator.Storage;
+import simulator.VersionLog;
 
 public class Server {
 
 	ServerSimulator sim;
 
 	int versionOld; // the version number before current world was created
-	Integer[][] log; // log of last version number when each hex was changed
+	VersionLog log; // log of last version number when each hex was changed, null until a world is made
 	ArrayList<Critter> deadCritters;
 
 	private ArrayList<String> users;
@@ -40,6 +45,9 @@ public class Server {
 
 	private float rate;
 
+	// program whose text was last sent to each session, by structural hash
+	private HashMap<Integer, HashMap<Long, Program>> sentPrograms;
+
 	// used to deal with race conditions with simulator info
 	ReentrantReadWriteLock lock;
 
@@ -53,7 +61,7 @@ public class Server {
 		versionOld = 0;
 		deadCritters = new ArrayList<Critter>();
 		rate = 0;
-		log = new Integer[0][0];
+		sentPrograms = new HashMap<Integer, HashMap<Long, Program>>();
 
 		lock = new ReentrantReadWriteLock();
 	}
@@ -158,16 +166,17 @@ public class Server {
 
 			if (positions == null) {
 				int[] ids = new int[num];
+				// Ids are only used up by critters that are added
+				lock.writeLock().lock();
 				for (int i = 0; i < num; i++) {
-					int critterId = nextCritterId++;
-					lock.writeLock().lock();
-					boolean added = sim.loadCritter(program, speciesId, mem, critterId, seshId);
-					lock.writeLock().unlock();
-					if (added)
+					int critterId = nextCritterId;
+					if (sim.loadCritter(program, speciesId, mem, critterId, seshId)) {
 						ids[i] = critterId;
-					else
+						nextCritterId++;
+					} else
 						ids[i] = -1;
 				}
+				lock.writeLock().unlock();
 
 				response.status(201);
 				response.body("OK");
@@ -176,16 +185,16 @@ public class Server {
 
 				int[] ids = new int[positions.length];
 				for (int i = 0; i < positions.length; i++) {
-					int critterId = nextCritterId++;
 					int col = positions[i].col();
 					int row = positions[i].row();
 					lock.writeLock().lock();
-					boolean added = sim.loadCritter(program, col, row, 0, speciesId, mem, critterId, seshId);
-					lock.writeLock().unlock();
-					if (added)
+					int critterId = nextCritterId;
+					if (sim.loadCritter(program, col, row, 0, speciesId, mem, critterId, seshId)) {
 						ids[i] = critterId;
-					else
+						nextCritterId++;
+					} else
 						ids[i] = -1;
+					lock.writeLock().unlock();
 				}
 
 				response.status(201);
@@ -277,35 +286,40 @@ public class Server {
 				lock.readLock().unlock();
 			}
 
-			lock.writeLock().lock();
+			// The same seed gives the same world, for reproducing runs
+			long seed = newWorld.seed() != null ? newWorld.seed() : new SplittableRandom().nextLong();
+			Constants constants;
 			try {
-				if (newWorld.description().equals(" "))
-					sim = new ServerSimulator(deadCritters, versionOld);
-				else
-					sim = new ServerSimulator(newWorld.description(), deadCritters, versionOld);
+				constants = Constants.defaults().with(newWorld.constants());
 			} catch (IllegalArgumentException e) {
 				response.status(406);
-				return "Incorrect world defintion";
-			}
-
-			lock.writeLock().unlock();
-
-			if (log.length == 0) {
-				log = new Integer[sim.getWorld().length][sim.getWorld()[0].length];
+				return "Incorrect constants: " + e.getMessage();
 			}
-			if (sim.getWorld().length > log.length) {
-				log = new Integer[sim.getWorld().length][log[0].length];
-			}
-			if (sim.getWorld()[0].length > log[0].length) {
-				log = new Integer[log.length][sim.getWorld()[0].length];
+			Storage storage;
+			try {
+				storage = newWorld.storage() == null ? Storage.DENSE : Storage.valueOf(newWorld.storage().toUpperCase());
+			} catch (IllegalArgumentException e) {
+				response.status(406);
+				return "Storage must be dense or sparse";
 			}
 
-			for (int i = 0; i < log.length; i++) {
-				for (int j = 0; j < log[0].length; j++) {
-					lock.readLock().lock();
-					log[i][j] = sim.version();
-					lock.readLock().unlock();
+			lock.writeLock().lock();
+			try {
+				if (newWorld.description().equals(" "))
+					sim = new ServerSimulator(seed, constants, storage, deadCritters, versionOld);
+				else
+					sim = new ServerSimulator(newWorld.description(), seed, constants, storage, deadCritters,
+							versionOld);
+				log = sim.newLog();
+				// Sessions are sent the text of each program of the new world again
+				synchronized (sentPrograms) {
+					sentPrograms.clear();
 				}
+			} catch (IllegalArgumentException e) {
+				response.status(406);
+				return "Incorrect world defintion";
+			} finally {
+				lock.writeLock().unlock();
 			}
 
 			response.status(201);
@@ -347,9 +361,9 @@ public class Server {
 				lock.readLock().lock();
 
 				from_r = 0;
-				to_r = sim.getWorld()[0].length;
+				to_r = sim.getRows();
 				from_c = 0;
-				to_c = sim.getWorld().length;
+				to_c = sim.getColumns();
 
 				lock.readLock().unlock();
 			} else {
@@ -366,13 +380,13 @@ public class Server {
 				dead[i] = new Integer(d.get(i).critterId());
 			}
 			WorldInfoBundle w = new WorldInfoBundle(sim.getTimeStep(), sim.version(), u, rate, sim.getName(),
-					sim.getCritters().size(), sim.getWorld().length, sim.getWorld()[0].length, dead);
+					sim.getCritters().size(), sim.getColumns(), sim.getRows(), sim.getSeed(), dead);
 
 			int maxRows = 0;
-			while (2 * maxRows < 2 * sim.getWorld()[0].length - sim.getWorld().length)
+			while (2 * maxRows < 2 * sim.getRows() - sim.getColumns())
 				maxRows++;
 
-			for (int col = Math.max(0, from_c); col < Math.min(sim.getWorld().length, to_c); col++) {
+			for (int col = Math.max(0, from_c); col < Math.min(sim.getColumns(), to_c); col++) {
 				int tempRows = maxRows;
 				if (col % 2 == 1) {
 					tempRows--;
@@ -380,7 +394,7 @@ public class Server {
 				int startRow = Math.max((col / 2) + (col % 2), from_r);
 
 				for (int row = 0; row < Math.min(tempRows, to_r); row++) {
-					HexInfo h = new HexInfo(col, row + startRow, sim.getWorld()[col][row + startRow],
+					HexInfo h = new HexInfo(col, row + startRow, sim.getHex(col, row + startRow),
 							Integer.parseInt(seshIdStr));
 					w.addHexInfo(h);
 				}
@@ -527,6 +541,35 @@ public class Server {
 		}, gson::toJson);
 	}
 
+	/**
+	 * Returns the text of the program of critter {@code c}, or null if the
+	 * text last sent to session {@code sessionId} for its structural hash,
+	 * since the world was made, was that of an equal program. Views of the
+	 * world are sent often, and clients keep the last text they were sent for
+	 * each hash, so in them the text of an unchanged program is only sent
+	 * once, and programs whose hashes collide are still told apart.
+	 * 
+	 * @param c
+	 *            Critter whose program is sent
+	 * @param sessionId
+	 *            Session the program is sent to
+	 * @return Text of the program, or null if the session already has it
+	 */
+	private String programText(Critter c, int sessionId) {
+		Program p = c.getProgram();
+		synchronized (sentPrograms) {
+			HashMap<Long, Program> sent = sentPrograms.get(sessionId);
+			if (sent == null) {
+				sent = new HashMap<Long, Program>();
+				sentPrograms.put(sessionId, sent);
+			}
+			Program last = sent.put(p.structuralHash(), p);
+			if (p.sameAs(last))
+				return null;
+		}
+		return p.toString();
+	}
+
 	// Request for POST /login
 	private class LoginBundle {
 		private String level;
@@ -554,7 +597,8 @@ public class Server {
 	private class CritterInfo {
 		private int id;
 		private String species_id;
-		String program;
+		String program; // null if not viewable
+		String program_hash; // null if not viewable
 		int row, col, dir;
 		int[] mem;
 		int recently_executed_rule;
@@ -567,6 +611,7 @@ public class Server {
 			dir = c.getDir();
 			mem = c.getMem();
 			if (c.viewableBy(sessionId)) { // can see if admin
+				program_hash = Long.toHexString(c.getProgram().structuralHash());
 				program = c.getProgram().toString();
 				recently_executed_rule = c.indexOf(c.getLastRule());
 			} else {
@@ -650,11 +695,12 @@ public class Server {
 		private int population;
 		private int rows;
 		private int cols;
+		private long seed;
 		private Integer[] dead_critters;
 		private ArrayList<HexInfo> state;
 
 		public WorldInfoBundle(int timestep, int version, int updateSince, double rate, String name, int pop, int cols,
-				int rows, Integer[] dead_critters) {
+				int rows, long seed, Integer[] dead_critters) {
 			this.current_timestep = timestep;
 			this.current_version_number = version;
 			this.update_since = updateSince;
@@ -663,6 +709,7 @@ public class Server {
 			this.population = pop;
 			this.rows = rows;
 			this.cols = cols;
+			this.seed = seed;
 			this.dead_critters = dead_critters;
 			state = new ArrayList<HexInfo>();
 		}
@@ -675,10 +722,25 @@ public class Server {
 	// request of POST /world
 	private class MakeWorldBundle {
 		private String description;
+		private Long seed; // null if the request has none
+		private HashMap<String, Double> constants; // values in place of the defaults, null if none
+		private String storage; // "dense" or "sparse", null for dense
 
 		public String description() {
 			return description;
 		}
+
+		public Long seed() {
+			return seed;
+		}
+
+		public HashMap<String, Double> constants() {
+			return constants;
+		}
+
+		public String storage() {
+			return storage;
+		}
 	}
 
 	// request of POST /world/create_entity
@@ -731,7 +793,8 @@ public class Server {
 		int value; // for food
 		int id; // for critter
 		String species_id;
-		String program;
+		String program; // null if not viewable or already sent to the session
+		String program_hash; // null if not viewable
 		int direction;
 		int[] mem;
 		int recently_executed_rule;
@@ -760,7 +823,8 @@ public class Server {
 				direction = c.getDir();
 				mem = c.getMem();
 				if (c.viewableBy(sessionId)) { // can see if admin
-					program = c.getProgram().toString();
+					program_hash = Long.toHexString(c.getProgram().structuralHash());
+					program = programText(c, sessionId);
 					recently_executed_rule = c.indexOf(c.getLastRule());
 				} else {
 					program = null;
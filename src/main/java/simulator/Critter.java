@@ -1,24 +1,41 @@
 package simulator;
 
-import java.util.ArrayList;
-import java.util.PriorityQueue;
-import java.util.Random;
-
 import ast.Program;
 import ast.Rule;
+import exceptions.CompileError;
 import interpret.CritterRunner;
-import interpret.Interpreter;
+import interpret.Engine;
+import interpret.Executable;
 import interpret.Outcome;
+import parse.Constants;
 
 public class Critter {
 	Program program;
+	Executable compiled; // null if not compiled by an engine
+	Engine compiledBy; // engine that compiled the program, null if none has yet
 	String species;
 	int col;
 	int row;
 	int[] mem;
 	int dir;
+	int slot = -1; // slot in the critters of the world, -1 if not in it
+	RandomStream random; // random numbers of the critter, split from those of the world
+	int posture; // posture at the start of the current parallel step
+	boolean pending; // whether the critter is yet to take its turn in the current parallel step
+	TurnRecord speculated; // what the last speculative turn read, null if there has been none
+	private TurnRecord last; // what the last sequential turn read, null if there has been none
+	private TurnRecord recording; // record of the reads of the current turn, null if they are not recorded
+
+	// Values derived from the critter's program, memory and direction, UNKNOWN
+	// until asked for after a change to what they are derived from. Each is a
+	// single field, so a critter looked at by several threads at once is seen
+	// either with its value or without one.
+	private static final int UNKNOWN = Integer.MIN_VALUE;
+	private int complexity = UNKNOWN; // from the number of rules and mem[1] and mem[2]
+	private int looks = UNKNOWN; // appearance without the posture, from mem[3], mem[6] and dir
 
 	SimulatorImpl sim;
+	CritterRunner runner;
 	Rule lastRule = null;
 
 	int critterId;
@@ -29,7 +46,8 @@ public class Critter {
 	 * direction, attributes, and species
 	 * 
 	 * @param p
-	 *            Program AST head node
+	 *            Program AST head node, replaced by the interned program equal
+	 *            to it
 	 * @param s
 	 *            Species of critter
 	 * @param c
@@ -42,13 +60,15 @@ public class Critter {
 	 *            Direction critter is facing
 	 */
 	public Critter(Program p, String s, int c, int r, int[] mem, int dir, SimulatorImpl sim) {
-		program = p;
+		program = sim.programs.intern(p);
 		species = s;
 		col = c;
 		row = r;
 		this.mem = mem;
 		this.dir = dir; // Has to be less than 6
 		this.sim = sim;
+		random = sim.random.split();
+		runner = new CritterRunner(this);
 	}
 
 	public void setIds(int critId, int createId) {
@@ -56,6 +76,24 @@ public class Critter {
 		creatorId = createId;
 	}
 
+	/**
+	 * Returns the runner that evaluates this critter's program
+	 * 
+	 * @return Runner of the critter
+	 */
+	public CritterRunner getRunner() {
+		return runner;
+	}
+
+	/**
+	 * Returns the constants of the rules of the critter's world
+	 * 
+	 * @return Constants of the world
+	 */
+	public Constants getConstants() {
+		return sim.constants;
+	}
+
 	public int critterId() {
 		return critterId;
 	}
@@ -65,15 +103,106 @@ public class Critter {
 	}
 
 	/**
-	 * Executes rules until an action or until max rules is reached
+	 * Executes rules until an action or until max rules is reached. Runs the
+	 * program with the simulator's engine, falling back to interpreting the AST
+	 * if the program does not compile. Critters with equal programs share one
+	 * compiled form.
+	 * <p>
+	 * If the simulator skips quiescent turns, the inputs of the turn are
+	 * recorded, and a turn whose inputs are the same as those of the last turn
+	 * performs the same action again without running the program.
 	 * 
-	 * @return Outcome of running an action (could be mate)
+	 * @return Outcome of running an action (could be mate). The outcome is
+	 *         reused by the critter's next turn.
 	 */
 	public Outcome advanceTime() {
-		Interpreter runner = new CritterRunner(this);
+		if (!sim.skipsQuiescent() || runner.isDeciding()) {
+			if (last != null)
+				last.valid = false;
+			return run();
+		}
+
+		if (last != null && last.unchanged(this, sim.world)) {
+			sim.turnsSkipped++;
+			return runner.replay();
+		}
+
+		if (last == null)
+			last = new TurnRecord();
+		last.start(this, sim.world);
+		recording = last;
+		try {
+			return run();
+		} finally {
+			recording = null;
+			sim.turnsRun++;
+		}
+	}
+
+	/**
+	 * Runs the critter's program for a turn
+	 */
+	private Outcome run() {
+		Engine engine = sim.getEngine();
+		if (compiledBy != engine) {
+			compiledBy = engine;
+			compiled = sim.programs.compiled(program, engine);
+			if (compiled == null) {
+				try {
+					compiled = engine.compile(program);
+					sim.programs.setCompiled(program, engine, compiled);
+				} catch (CompileError e) {
+					compiled = null;
+				}
+			}
+		}
+
+		if (compiled != null)
+			return compiled.run(runner);
 		return runner.interpret();
 	}
 
+	/**
+	 * Runs the critter's program like {@link #advanceTime()}, but only chooses
+	 * an action, leaving it to {@link #commit()} to perform. Changes to the
+	 * critter's memory are made at once.
+	 */
+	public void decide() {
+		runner.setDeciding(true);
+		try {
+			advanceTime();
+		} finally {
+			runner.setDeciding(false);
+		}
+	}
+
+	/**
+	 * Chooses an action like {@link #decide()}, recording the hexes the choice
+	 * depends on and the memory from before the turn, so that the turn can be
+	 * undone and run again if one of those hexes changes before the action is
+	 * performed
+	 */
+	void speculate() {
+		if (speculated == null)
+			speculated = new TurnRecord();
+		speculated.start(this);
+		recording = speculated;
+		try {
+			decide();
+		} finally {
+			recording = null;
+		}
+	}
+
+	/**
+	 * Performs the action chosen by the last call to {@link #decide()}
+	 * 
+	 * @return Outcome of the action, which is reused by the critter's next turn
+	 */
+	public Outcome commit() {
+		return runner.commit();
+	}
+
 	/**
 	 * May not be needed, but in case more attributes are added than the original
 	 * MIN_MEMORY size of 8, resizes the mem array
@@ -94,6 +223,22 @@ public class Critter {
 		return program;
 	}
 
+	/**
+	 * Replaces the critter's program with {@code p}, or with the interned program
+	 * equal to it, discarding the compiled form of the old program
+	 * 
+	 * @param p
+	 *            New program AST head node
+	 */
+	public void setProgram(Program p) {
+		program = sim.programs.intern(p);
+		compiled = null;
+		compiledBy = null;
+		complexity = UNKNOWN;
+		if (last != null)
+			last.valid = false;
+	}
+
 	/**
 	 * Returns species of critter
 	 * 
@@ -146,7 +291,30 @@ public class Critter {
 	 * @return Appearance
 	 */
 	public int appearence() {
-		return mem[3] * 100000 + mem[6] * 1000 + mem[7] * 10 + dir;
+		return appearence(mem[7]);
+	}
+
+	/**
+	 * Returns appearance of critter with posture {@code posture}
+	 */
+	int appearence(int posture) {
+		int l = looks;
+		if (l == UNKNOWN) {
+			l = mem[3] * 100000 + mem[6] * 1000 + dir;
+			looks = l;
+		}
+		return l + posture * 10;
+	}
+
+	/**
+	 * Discards the values derived from the critter's memory and direction,
+	 * which must be done after changing the size, offense, defense or tag of
+	 * the critter, or the direction it faces. The posture is not part of them,
+	 * so programs can change it without doing so.
+	 */
+	void changed() {
+		complexity = UNKNOWN;
+		looks = UNKNOWN;
 	}
 
 	// returns 0 if this hex is not in bounds.
@@ -164,46 +332,29 @@ public class Critter {
 	public int ahead(int dist, int dir) {
 		if (dist < 0)
 			dist = 0;
+		dir = direction(dir);
 
-		Hex h;
-		int newRow = row;
-		int newCol = col;
-
-		switch (dir) {
-		case 0:
-			newRow = row + dist;
-			break;
-		case 1:
-			newCol = col + dist;
-			newRow = row + dist;
-			break;
-		case 2:
-			newCol = col + dist;
-			break;
-		case 3:
-			newRow = row - dist;
-			break;
-		case 4:
-			newRow = row - dist;
-			newCol = col - dist;
-			break;
-		default: // case 5
-			newCol = col - dist;
-		}
-
-		if (!sim.isInBounds(newCol, newRow))
+		WorldStore world = sim.world;
+		int i;
+		if (dist == 1)
+			i = neighbor(dir);
+		else
+			i = world.index(col + WorldStore.DCOL[dir] * dist, row + WorldStore.DROW[dir] * dist);
+		if (i < 0)
 			return 0;
+		if (recording != null)
+			recording.read(i);
 
-		h = sim.getHex(newCol, newRow);
-
-		if (h.isRock())
+		if (world.isRock(i))
 			return -1;
-		if (h.isFood())
-			return -h.getFood() - 1;
-		if (h.isCritter())
-			return h.getCritter().appearence();
-		else
+		if (world.food(i) > 0)
+			return -world.food(i) - 1;
+		Critter c = world.critter(i);
+		if (c == null)
 			return 0;
+		// In a parallel step, critters that are yet to take their turn are
+		// seen with the posture they had before they chose their actions
+		return c == this || !c.pending ? c.appearence() : c.appearence(c.posture);
 	}
 
 	/**
@@ -218,45 +369,51 @@ public class Critter {
 		return ahead(1, dir);
 	}
 
-	public int smell() {
-		PriorityQueue<HexNode> frontier = new PriorityQueue<HexNode>();
-		HexNode root = new HexNode(col, row, dir, 0, null);
-		frontier.add(root);
-
-		while (!frontier.isEmpty()) {
-			HexNode n = frontier.poll();
-			if (n.dist() == 10) // max smell distance
-				return 1000000;
-
-			HexNode node1 = new HexNode(n.col(), n.row(), (n.dir() + 1) % 6, n.dist() + 1, n);
-			HexNode node2 = new HexNode(n.col(), n.row(), n.dir() == 0 ? 5 : n.dir() - 1, n.dist() + 1, n);
-			HexNode node3 = n.forward();
-
-			ArrayList<HexNode> edges = new ArrayList<HexNode>();
-			edges.add(node1);
-			edges.add(node2);
-			if (sim.isInBounds(node3.col(), node3.row())) {
-				if (sim.world[node3.col()][node3.row()].isFood()) {
-					// Have found closest food
-					HexNode current = n;
-					while (!(current.col() == col && current.row() == row)) {
-						current = current.parent();
-					}
-					return n.dist() * 1000 + current.dir();
-				}
-
-				if (sim.getHex(node3.col(), node3.row()).isEmpty())
-					edges.add(node3);
-			}
-
-			for (HexNode edge : edges) {
-				if (!frontier.contains(edge))
-					frontier.add(edge);
-			}
+	/**
+	 * Returns mem[{@code index}], or 0 if {@code index} is out of bounds, as
+	 * read by the critter's program
+	 * 
+	 * @param index
+	 *            Index of the memory slot to read
+	 * @return Value of the memory slot
+	 */
+	public int readMem(int index) {
+		if (index < 0 || index >= mem.length)
+			return 0;
+		if (recording != null)
+			recording.readMem(index);
+		return mem[index];
+	}
 
-		}
+	/**
+	 * Returns a random number from 0 to {@code n} - 1, as read by the random
+	 * sensor
+	 * 
+	 * @param n
+	 *            Number of possible values, at least 2
+	 * @return Random number
+	 */
+	public int random(int n) {
+		if (recording != null)
+			recording.random = true;
+		return random.nextInt(n);
+	}
 
-		return 1000000;
+	/**
+	 * Returns the distance to the nearest food times 1000 plus the direction
+	 * in which to leave this hex to reach it, as read by the smell sensor, or
+	 * 1000000 if there is no food within the maximum smell distance
+	 * 
+	 * @return Smell of the critter
+	 */
+	public int smell() {
+		int i = sim.world.index(col, row);
+		if (i < 0)
+			return SmellSearch.NONE;
+		FoodField field = sim.usesFoodField() ? sim.world.foodField() : null;
+		if (field != null)
+			return field.smell(i, dir, recording);
+		return SmellSearch.get().search(sim.world, i, dir, recording);
 	}
 
 	// Action methods
@@ -269,34 +426,14 @@ public class Critter {
 	 * @return Hex in direction {@code dir} or null if out of bounds
 	 */
 	public Hex moveToDir(int dir) {
-		switch (dir) {
-		case 0:
-			if (sim.isInBounds(col, row + 1)) {
-				return sim.getWorld()[col][++row];
-			}
-			break;
-		case 1:
-			if (sim.isInBounds(col + 1, row + 1))
-				return sim.getWorld()[++col][++row];
-			break;
-		case 2:
-			if (sim.isInBounds(col + 1, row))
-				return sim.getWorld()[++col][row];
-			break;
-		case 3:
-			if (sim.isInBounds(col, row - 1))
-				return sim.getWorld()[col][--row];
-			break;
-		case 4:
-			if (sim.isInBounds(col - 1, row - 1))
-				return sim.getWorld()[--col][--row];
-			break;
-		default:
-			if (sim.isInBounds(col - 1, row))
-				return sim.getWorld()[--col][row];
-			break;
-		}
-		return null;
+		dir = direction(dir);
+		int i = neighbor(dir);
+		if (i < 0)
+			return null;
+
+		col += WorldStore.DCOL[dir];
+		row += WorldStore.DROW[dir];
+		return new Hex(sim.world, i);
 	}
 
 	/**
@@ -307,34 +444,29 @@ public class Critter {
 	 * @return Hex in given direction
 	 */
 	public Hex hexAtDir(int dir) {
-		switch (dir) {
-		case 0:
-			if (sim.isInBounds(col, row + 1)) {
-				return sim.getWorld()[col][row + 1];
-			}
-			break;
-		case 1:
-			if (sim.isInBounds(col + 1, row + 1))
-				return sim.getWorld()[col + 1][row + 1];
-			break;
-		case 2:
-			if (sim.isInBounds(col + 1, row))
-				return sim.getWorld()[col + 1][row];
-			break;
-		case 3:
-			if (sim.isInBounds(col, row - 1))
-				return sim.getWorld()[col][row - 1];
-			break;
-		case 4:
-			if (sim.isInBounds(col - 1, row - 1))
-				return sim.getWorld()[col - 1][row - 1];
-			break;
-		default:
-			if (sim.isInBounds(col - 1, row))
-				return sim.getWorld()[col - 1][row];
-			break;
-		}
-		return null; // maybe change
+		int i = neighbor(direction(dir));
+		return i < 0 ? null : new Hex(sim.world, i);
+	}
+
+	/**
+	 * Returns the index in the world of the hex next to the critter in
+	 * direction {@code dir}, or -1 if it is not in the world
+	 * 
+	 * @param dir
+	 *            Direction from 0 to 5
+	 * @return Index of the hex in the world's store
+	 */
+	private int neighbor(int dir) {
+		int i = sim.world.index(col, row);
+		return i < 0 ? -1 : sim.world.neighbor(i, dir);
+	}
+
+	/**
+	 * Returns direction {@code dir} as a direction from 0 to 5, where every
+	 * value outside that range is taken as 5
+	 */
+	private static int direction(int dir) {
+		return dir >= 0 && dir < 5 ? dir : 5;
 	}
 
 	/**
@@ -345,20 +477,7 @@ public class Critter {
 	 * @return Column of hex in direction {@code dir}
 	 */
 	public int colAtDir(int dir) {
-		switch (dir) {
-		case 0:
-			return col;
-		case 1:
-			return col + 1;
-		case 2:
-			return col + 1;
-		case 3:
-			return col;
-		case 4:
-			return col - 1;
-		default:
-			return col - 1;
-		}
+		return col + WorldStore.DCOL[direction(dir)];
 	}
 
 	/**
@@ -369,20 +488,7 @@ public class Critter {
 	 * @return Row of hex in direction {@code dir}
 	 */
 	public int rowAtDir(int dir) {
-		switch (dir) {
-		case 0:
-			return row + 1;
-		case 1:
-			return row + 1;
-		case 2:
-			return row;
-		case 3:
-			return row - 1;
-		case 4:
-			return row - 1;
-		default:
-			return row;
-		}
+		return row + WorldStore.DROW[direction(dir)];
 	}
 
 	/**
@@ -406,25 +512,25 @@ public class Critter {
 	 * Does nothing and gains energy from sun
 	 */
 	public void waitAction() {
-		mem[4] += sim.constants.get("SOLAR_FLUX");
-		if (mem[4] > mem[3] * sim.constants.get("ENERGY_PER_SIZE"))
-			mem[4] = mem[3] * sim.constants.get("ENERGY_PER_SIZE").intValue();
+		mem[4] += sim.constants.solarFlux;
+		if (mem[4] > mem[3] * sim.constants.energyPerSize)
+			mem[4] = mem[3] * sim.constants.energyPerSize;
 	}
 
 	/**
 	 * Moves critter forward one step if possible
 	 */
 	public boolean forward() {
-		if (decEnergy(sim.constants.get("MOVE_COST").intValue() * mem[3]))
+		if (decEnergy(sim.constants.moveCost * mem[3]))
 			return false;
 
 		if (nearby(dir) == 0) {
-			sim.getWorld()[col][row] = new Hex();
+			sim.world.clear(sim.world.index(col, row));
 			Hex h = moveToDir(dir);
 			if (h != null) {
 				h.addCritter(this);
 			} else
-				sim.getWorld()[col][row].addCritter(this);
+				sim.getHex(col, row).addCritter(this);
 		}
 		return true;
 	}
@@ -433,17 +539,17 @@ public class Critter {
 	 * Moves critter backward one step if possible
 	 */
 	public boolean backward() {
-		if (decEnergy(sim.constants.get("MOVE_COST").intValue() * mem[3]))
+		if (decEnergy(sim.constants.moveCost * mem[3]))
 			return false;
 
 		int backwardDir = (dir + 3) % 6;
 		if (nearby(backwardDir) == 0) {
-			sim.getWorld()[col][row] = new Hex();
+			sim.world.clear(sim.world.index(col, row));
 			Hex h = moveToDir(backwardDir);
 			if (h != null) {
 				h.addCritter(this);
 			} else
-				sim.getWorld()[col][row].addCritter(this);
+				sim.getHex(col, row).addCritter(this);
 		}
 		return true;
 	}
@@ -462,6 +568,7 @@ public class Critter {
 		if (dir == -1)
 			dir = 5;
 		dir %= 6;
+		looks = UNKNOWN;
 
 		return true;
 	}
@@ -475,7 +582,7 @@ public class Critter {
 
 		// If there is food
 		if (nearby(dir) < -1) {
-			int maxEdible = mem[3] * sim.constants.get("ENERGY_PER_SIZE").intValue() - mem[4];
+			int maxEdible = mem[3] * sim.constants.energyPerSize - mem[4];
 			if ((-(nearby(dir) + 1)) > maxEdible) {
 				mem[4] += maxEdible;
 				hexAtDir(dir).addFood(-maxEdible);
@@ -509,7 +616,7 @@ public class Critter {
 	 * Attacks critter in front if able
 	 */
 	public boolean attack() {
-		if (decEnergy(mem[3] * sim.constants.get("ATTACK_COST").intValue()))
+		if (decEnergy(mem[3] * sim.constants.attackCost))
 			return false;
 
 		// If there is a critter
@@ -528,8 +635,13 @@ public class Critter {
 		if (decEnergy(mem[3]))
 			return false;
 
-		if (nearby(dir) > 0)
-			hexAtDir(dir).getCritter().mem[6] = t;
+		if (nearby(dir) > 0) {
+			int i = neighbor(direction(dir));
+			Critter c = sim.world.critter(i);
+			c.mem[6] = t;
+			c.changed();
+			sim.world.touch(i); // its appearance changed
+		}
 		return true;
 	}
 
@@ -537,11 +649,12 @@ public class Critter {
 	 * Grows by one size if possible
 	 */
 	public boolean grow() {
-		int energy = mem[3] * complexity() * sim.constants.get("GROW_COST").intValue();
+		int energy = mem[3] * complexity() * sim.constants.growCost;
 		if (decEnergy(energy))
 			return false;
 
 		mem[3] = mem[3] + 1;
+		looks = UNKNOWN;
 		return true;
 	}
 
@@ -549,54 +662,32 @@ public class Critter {
 	 * Buds and spawns a critter behind if possible (chance of mutation)
 	 */
 	public boolean bud() {
-		if (decEnergy(sim.constants.get("BUD_COST").intValue() * complexity()))
+		if (decEnergy(sim.constants.budCost * complexity()))
 			return false;
 
-		Random r = new Random();
-		int p = r.nextInt(4); // probability of mutation
-
-		int newCol = col;
-		int newRow = row;
-
-		switch (dir) {
-		case 0:
-			newRow--;
-			break;
-		case 1:
-			newCol--;
-			newRow--;
-			break;
-		case 2:
-			newCol--;
-			break;
-		case 3:
-			newRow++;
-			break;
-		case 4:
-			newCol++;
-			newRow++;
-			break;
-		default:
-			newCol++;
-			break;
-		}
+		int p = random.nextInt(4); // probability of mutation
 
-		Critter baby = new Critter(program, species, newCol, newRow, mem, dir, this.sim);
+		// The baby is born behind the critter
+		int newCol = colAtDir((dir + 3) % 6);
+		int newRow = rowAtDir((dir + 3) % 6);
+
+		// The baby gets its own copy of the attributes, which are changed below
+		Critter baby = new Critter(program, species, newCol, newRow, mem.clone(), dir, this.sim);
 
 		while (p == 0) {
-			int i = r.nextInt(2); // probability of mutating Program
+			int i = random.nextInt(2); // probability of mutating Program
 
 			if (i == 0)
-				baby.program = baby.program.mutate();
+				baby.setProgram(baby.program.mutate(random));
 			else {
-				i = r.nextInt(3); // probability of changing each attribute
-				int a = r.nextInt(2); // increment or decrement
+				i = random.nextInt(3); // probability of changing each attribute
+				int a = random.nextInt(2); // increment or decrement
 
 				switch (i) {
 				case 0:
 					baby.mem[0] = a == 0 ? baby.mem[0] + 1 : baby.mem[0] - 1;
-					if (baby.mem[0] < 8)
-						baby.mem[0] = 8;
+					if (baby.mem[0] < sim.constants.minMemory)
+						baby.mem[0] = sim.constants.minMemory;
 					break;
 				case 1:
 					baby.mem[1] = a == 0 ? baby.mem[1] + 1 : baby.mem[1] - 1;
@@ -611,13 +702,20 @@ public class Critter {
 				}
 			}
 
-			p = r.nextInt(4);
+			p = random.nextInt(4);
+		}
+
+		if (baby.program == program) {
+			// Unmutated babies can share the parent's compiled program
+			baby.compiled = compiled;
+			baby.compiledBy = compiledBy;
 		}
 
 		baby.mem[3] = 1;
-		baby.mem[4] = sim.constants.get("INITIAL_ENERGY").intValue();
+		baby.mem[4] = sim.constants.initialEnergy;
 		baby.mem[6] = 0;
 		baby.mem[7] = 0;
+		baby.changed();
 
 		sim.addCritter(newCol, newRow, baby);
 		return true;
@@ -629,11 +727,17 @@ public class Critter {
 	 * @return Complexity
 	 */
 	public int complexity() {
+		int c = complexity;
+		if (c != UNKNOWN)
+			return c;
 		// r  RULE COST + (offense + defense)  ABILITY COST
 		int r = program.getRules().size();
-		int ruleCost = sim.constants.get("RULE_COST").intValue();
-		int abilityCost = sim.constants.get("ABILITY_COST").intValue();
-		return (r * ruleCost) + ((mem[1] + mem[2]) * abilityCost);
+		int ruleCost = sim.constants.ruleCost;
+		int abilityCost = sim.constants.abilityCost;
+		c = (r * ruleCost) + ((mem[1] + mem[2]) * abilityCost);
+		if (c != UNKNOWN)
+			complexity = c;
+		return c;
 	}
 
 	/**
@@ -643,8 +747,8 @@ public class Critter {
 	 *            Critter getting attacked
 	 */
 	public void dealDamage(Critter victim) {
-		double base = sim.constants.get("BASE_DAMAGE");
-		double inc = sim.constants.get("DAMAGE_INC");
+		double base = sim.constants.baseDamage;
+		double inc = sim.constants.damageInc;
 		int s1 = mem[3];
 		int s2 = victim.mem[3];
 		int o1 = mem[2];
@@ -0,0 +1,130 @@
+package simulator;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+
+/**
+ * The living critters of a world, kept densely in an array in the order they
+ * were added. Each critter knows its slot, so removing it takes constant time.
+ * <p>
+ * Changes made during a step are held back until the step ends: a critter
+ * that dies leaves its slot empty, and a critter that is born is put in a
+ * buffer after the last slot. When the step ends the buffered critters get
+ * slots and the empty slots are squeezed out, keeping the order of the
+ * critters, in one pass over the array. The slots therefore do not change
+ * while a step is running, and {@link #get(int)} returns null for the slots
+ * of critters that died during it. Outside a step, changes are made at once.
+ */
+class CritterStore extends AbstractList<Critter> {
+
+	private Critter[] critters;
+	private int end; // one past the last slot
+	private int born; // number of critters born during the current step, kept after the last slot
+	private int empty; // number of slots and births emptied during the current step
+	private boolean stepping;
+
+	CritterStore() {
+		critters = new Critter[16];
+	}
+
+	/**
+	 * Returns the critter in slot {@code i}, or null if it died during the
+	 * current step
+	 */
+	@Override
+	public Critter get(int i) {
+		if (i < 0 || i >= end)
+			throw new IndexOutOfBoundsException("Slot: " + i + ", Size: " + end);
+		return critters[i];
+	}
+
+	/**
+	 * Returns the number of slots, counting slots emptied during the current
+	 * step and not counting critters born during it
+	 */
+	@Override
+	public int size() {
+		return end;
+	}
+
+	/**
+	 * Returns the number of living critters
+	 */
+	int alive() {
+		return end + born - empty;
+	}
+
+	/**
+	 * Adds {@code c} after the last slot, or to the births of the current step
+	 */
+	@Override
+	public boolean add(Critter c) {
+		int i = end + born;
+		if (i == critters.length)
+			critters = Arrays.copyOf(critters, i * 2);
+		c.slot = i;
+		critters[i] = c;
+		if (stepping)
+			born++;
+		else {
+			end++;
+			modCount++;
+		}
+		return true;
+	}
+
+	/**
+	 * Removes critter {@code c}, if it is in the store
+	 */
+	void remove(Critter c) {
+		if (c.slot < 0 || c.slot >= end + born || critters[c.slot] != c)
+			return;
+		critters[c.slot] = null;
+		c.slot = -1;
+		empty++;
+		if (!stepping)
+			compact();
+	}
+
+	/**
+	 * Starts a step: critters that die are left as empty slots and critters
+	 * that are born are buffered until {@link #endStep()}
+	 */
+	void startStep() {
+		stepping = true;
+	}
+
+	/**
+	 * Ends a step, giving slots to the critters born during it and squeezing
+	 * out the slots of the critters that died during it
+	 */
+	void endStep() {
+		stepping = false;
+		if (born > 0) {
+			end += born;
+			born = 0;
+			modCount++;
+		}
+		compact();
+	}
+
+	/**
+	 * Moves the living critters down over the empty slots, keeping their order
+	 */
+	private void compact() {
+		if (empty == 0)
+			return;
+		int n = 0;
+		for (int i = 0; i < end; i++) {
+			Critter c = critters[i];
+			if (c != null) {
+				c.slot = n;
+				critters[n++] = c;
+			}
+		}
+		Arrays.fill(critters, n, end, null);
+		end = n;
+		empty = 0;
+		modCount++;
+	}
+}
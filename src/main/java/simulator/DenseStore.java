@@ -0,0 +1,191 @@
+package simulator;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * A world whose hexes are packed into arrays. Only the hexes inside the world
+ * are stored: they are numbered column by column, skipping the corners of the
+ * {@code cols} by {@code rows} rectangle that fall outside it, and each has a
+ * bit that is set if it is a rock, an amount of food and the critter on it.
+ * <p>
+ * The index of the neighbor of every hex in each of the six directions is
+ * kept in a table, so moving or looking one step is a single array load.
+ * <p>
+ * The empty hexes are kept in an array in no order, with the position of each
+ * in it, so a hex is added or removed by swapping it with the last one, and
+ * the number of empty hexes and a random one are found without a scan.
+ */
+class DenseStore extends WorldStore {
+
+	private final int[] first; // index of the lowest hex of each column
+	private final int[] colOf; // column of each hex
+	private final int[] neighbors; // index of the neighbor of each hex in each direction, -1 if outside
+
+	private final long[] rocks; // one bit per hex
+	private final int[] food;
+	private final Critter[] critters; // null where there is no critter
+	private final int[] free; // the empty hexes, the first freeCount entries, in no order
+	private final int[] freeAt; // position of each hex in free, -1 if it is not empty
+	private int freeCount;
+	private final int[] changedAt; // stamp of the last change to each hex
+
+	/**
+	 * Constructs an empty world of {@code cols} columns and {@code rows} rows
+	 *
+	 * @param cols
+	 *            Number of columns
+	 * @param rows
+	 *            Number of rows
+	 */
+	DenseStore(int cols, int rows) {
+		super(cols, rows);
+		first = new int[cols];
+		for (int c = 0, n = 0; c < cols; c++) {
+			first[c] = n;
+			n += high[c] - low[c];
+		}
+
+		neighbors = new int[size * 6];
+		colOf = new int[size];
+		for (int c = 0; c < cols; c++)
+			for (int r = low[c]; r < high[c]; r++) {
+				int i = index(c, r);
+				colOf[i] = c;
+				for (int dir = 0; dir < 6; dir++)
+					neighbors[i * 6 + dir] = index(c + DCOL[dir], r + DROW[dir]);
+			}
+
+		rocks = new long[(size + 63) >>> 6];
+		food = new int[size];
+		critters = new Critter[size];
+		changedAt = new int[size];
+
+		// Every hex starts empty
+		free = new int[size];
+		freeAt = new int[size];
+		for (int i = 0; i < size; i++)
+			free[i] = freeAt[i] = i;
+		freeCount = size;
+	}
+
+	@Override
+	int index(int col, int row) {
+		if (col < 0 || col >= cols || row < low[col] || row >= high[col])
+			return -1;
+		return first[col] + row - low[col];
+	}
+
+	@Override
+	int span() {
+		return size;
+	}
+
+	@Override
+	int neighbor(int i, int dir) {
+		return neighbors[i * 6 + dir];
+	}
+
+	@Override
+	int col(int i) {
+		return colOf[i];
+	}
+
+	@Override
+	int row(int i) {
+		int c = colOf[i];
+		return low[c] + i - first[c];
+	}
+
+	@Override
+	boolean isRock(int i) {
+		return (rocks[i >>> 6] & 1L << i) != 0;
+	}
+
+	@Override
+	int food(int i) {
+		return food[i];
+	}
+
+	@Override
+	Critter critter(int i) {
+		return critters[i];
+	}
+
+	@Override
+	boolean isEmpty(int i) {
+		return !isRock(i) && food[i] == 0 && critters[i] == null;
+	}
+
+	@Override
+	int emptyHexes() {
+		return freeCount;
+	}
+
+	@Override
+	int randomEmpty(Random random) {
+		if (freeCount == 0)
+			return -1;
+		return free[random.nextInt(freeCount)];
+	}
+
+	@Override
+	void storeRock(int i) {
+		rocks[i >>> 6] |= 1L << i;
+		indexFree(i);
+	}
+
+	@Override
+	void storeFood(int i, int amount) {
+		food[i] += amount;
+		indexFree(i);
+	}
+
+	@Override
+	void storeCritter(int i, Critter c) {
+		critters[i] = c;
+		indexFree(i);
+	}
+
+	@Override
+	void storeClear(int i) {
+		rocks[i >>> 6] &= ~(1L << i);
+		food[i] = 0;
+		critters[i] = null;
+		indexFree(i);
+	}
+
+	/**
+	 * Adds hex {@code i} to the empty hexes or removes it from them, after a
+	 * change that may have made it empty or not
+	 */
+	private void indexFree(int i) {
+		int at = freeAt[i];
+		if (isEmpty(i)) {
+			if (at < 0) {
+				free[freeCount] = i;
+				freeAt[i] = freeCount++;
+			}
+		} else if (at >= 0) {
+			int last = free[--freeCount];
+			free[at] = last;
+			freeAt[last] = at;
+			freeAt[i] = -1;
+		}
+	}
+
+	@Override
+	void setChangedAt(int i, int stamp) {
+		changedAt[i] = stamp;
+	}
+
+	@Override
+	void clearChangedAt() {
+		Arrays.fill(changedAt, 0);
+	}
+
+	@Override
+	boolean changedSince(int i, int stamp) {
+		return changedAt[i] > stamp;
+	}
+}
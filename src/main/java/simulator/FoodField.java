@@ -0,0 +1,234 @@
+package simulator;
+
+import java.util.Arrays;
+
+/**
+ * The distance to the nearest food from every state of a world, kept up to
+ * date as the world changes, so that the smell sensor is answered by looking
+ * at the hexes next to a critter instead of searching.
+ * <p>
+ * A state is a hex and a direction. Its distance is the number of moves, each
+ * a turn left or right or a step forward onto an empty hex, until a critter
+ * in that state would face food, as for {@link SmellSearch}. Distances of
+ * {@link SmellSearch#MAX_DISTANCE} or more are not told apart. The distance of
+ * a state depends only on the distances of the states it can move to and on
+ * the hex ahead of it, so a change to a hex, gaining or losing food or
+ * becoming empty or not, only changes the distances of the states around it.
+ * Those are repaired in time proportional to the number of distances that
+ * change: states that lost the path their distance was based on are reset,
+ * and then distances are settled outward from the changed states in order,
+ * with a bucket queue.
+ * <p>
+ * Hexes whose distances change are stamped as changed in the world, so turns
+ * that smelled from next to them are not skipped or kept.
+ */
+class FoodField {
+
+	static final int FAR = SmellSearch.MAX_DISTANCE; // distance of states with no food in range
+
+	// Ways for a critter to leave its hex, in order of preference among paths
+	// of the same length: the turn left or right, and the number of turns
+	private static final int[] TURNS = { 0, 5, 4, 3, 1, 2 };
+	private static final int[] COST = { 0, 1, 2, 3, 1, 2 };
+
+	private final WorldStore world;
+	private final byte[] dist; // distance of each state, hex * 6 + direction, at most FAR
+
+	// Work space of repairs, reused by each
+	private final int[][] buckets; // states to settle at each distance
+	private final int[] bucketSize;
+	private int[] stack = new int[64]; // states to check for losing their path
+	private int stackSize;
+	private int[] reset = new int[64]; // states reset or to be settled again
+	private int resetSize;
+
+	/**
+	 * Constructs the field of {@code world} as it is
+	 *
+	 * @param world
+	 *            World whose food is measured
+	 */
+	FoodField(WorldStore world) {
+		this.world = world;
+		dist = new byte[world.size * 6];
+		Arrays.fill(dist, (byte) FAR);
+		buckets = new int[FAR][16];
+		bucketSize = new int[FAR];
+
+		for (int s = 0; s < dist.length; s++) {
+			int ahead = world.neighbor(s / 6, s % 6);
+			if (ahead >= 0 && world.food(ahead) > 0)
+				push(0, s);
+		}
+		settle(false);
+	}
+
+	/**
+	 * Returns the smell of a critter on hex {@code start} facing {@code dir},
+	 * as {@link SmellSearch#search} would, including which of several paths of
+	 * the same length is taken
+	 *
+	 * @param start
+	 *            Index of the critter's hex
+	 * @param dir
+	 *            Direction the critter faces
+	 * @param record
+	 *            Record of the turn, which is told the hexes looked at, or null
+	 * @return Smell of the critter
+	 */
+	int smell(int start, int dir, TurnRecord record) {
+		int best = FAR;
+		int leaving = 0;
+		for (int k = 0; k < 6; k++) {
+			int d = (dir + TURNS[k]) % 6;
+			int ahead = world.neighbor(start, d);
+			if (ahead < 0)
+				continue;
+			if (record != null)
+				record.read(ahead);
+			int to;
+			if (world.food(ahead) > 0)
+				to = COST[k];
+			else if (world.isEmpty(ahead))
+				to = COST[k] + 1 + dist[ahead * 6 + d];
+			else
+				continue;
+			if (to < best) {
+				best = to;
+				leaving = d;
+			}
+		}
+		return best < FAR ? best * 1000 + leaving : SmellSearch.NONE;
+	}
+
+	/**
+	 * Repairs the distances after hex {@code i} gained or lost food or became
+	 * empty or not
+	 */
+	void changed(int i) {
+		// The states facing the hex are the only ones whose own moves changed
+		for (int d = 0; d < 6; d++) {
+			int behind = world.neighbor(i, (d + 3) % 6);
+			if (behind >= 0)
+				add(behind * 6 + d);
+		}
+		for (int j = 0, facing = resetSize; j < facing; j++)
+			if (best(reset[j]) > dist[reset[j]])
+				lose(reset[j]);
+
+		// Distances are only read once the states that lost their paths are reset
+		for (int j = 0; j < resetSize; j++) {
+			int s = reset[j];
+			int b = best(s);
+			if (b < dist[s])
+				push(b, s);
+		}
+		resetSize = 0;
+		settle(true);
+	}
+
+	/**
+	 * Returns the distance of state {@code s} given the distances of the
+	 * states it can move to
+	 */
+	private int best(int s) {
+		int i = s / 6;
+		int d = s % 6;
+		int ahead = world.neighbor(i, d);
+		if (ahead >= 0 && world.food(ahead) > 0)
+			return 0;
+		int b = Math.min(dist[i * 6 + (d + 1) % 6], dist[i * 6 + (d + 5) % 6]);
+		if (ahead >= 0 && world.isEmpty(ahead))
+			b = Math.min(b, dist[ahead * 6 + d]);
+		return Math.min(b + 1, FAR);
+	}
+
+	/**
+	 * Resets the distance of state {@code s}, which is more than any path from
+	 * it now gives, and of every state whose distance relied on it
+	 */
+	private void lose(int s) {
+		stackSize = 0;
+		pushStack(s);
+		while (stackSize > 0) {
+			s = stack[--stackSize];
+			int old = dist[s];
+			if (old == FAR)
+				continue;
+			int b = best(s);
+			if (b <= old) {
+				if (b < old)
+					add(s);
+				continue;
+			}
+
+			dist[s] = (byte) FAR;
+			world.touch(s / 6);
+			add(s);
+			int i = s / 6;
+			int d = s % 6;
+			if (dist[i * 6 + (d + 1) % 6] == old + 1)
+				pushStack(i * 6 + (d + 1) % 6);
+			if (dist[i * 6 + (d + 5) % 6] == old + 1)
+				pushStack(i * 6 + (d + 5) % 6);
+			int behind = world.isEmpty(i) ? world.neighbor(i, (d + 3) % 6) : -1;
+			if (behind >= 0 && dist[behind * 6 + d] == old + 1)
+				pushStack(behind * 6 + d);
+		}
+	}
+
+	/**
+	 * Gives the queued states their distances, nearest first, and passes them
+	 * on to the states that can move to them
+	 *
+	 * @param touch
+	 *            Whether to stamp the hexes whose distances change
+	 */
+	private void settle(boolean touch) {
+		for (int k = 0; k < FAR; k++) {
+			int[] bucket = buckets[k];
+			for (int j = 0; j < bucketSize[k]; j++) {
+				int s = bucket[j];
+				if (k >= dist[s])
+					continue;
+				dist[s] = (byte) k;
+				int i = s / 6;
+				if (touch)
+					world.touch(i);
+				if (k + 1 == FAR)
+					continue;
+
+				int d = s % 6;
+				offer(k + 1, i * 6 + (d + 1) % 6);
+				offer(k + 1, i * 6 + (d + 5) % 6);
+				int behind = world.isEmpty(i) ? world.neighbor(i, (d + 3) % 6) : -1;
+				if (behind >= 0)
+					offer(k + 1, behind * 6 + d);
+			}
+			bucketSize[k] = 0;
+		}
+	}
+
+	private void offer(int k, int s) {
+		if (k < dist[s])
+			push(k, s);
+	}
+
+	private void push(int k, int s) {
+		if (bucketSize[k] == buckets[k].length)
+			buckets[k] = Arrays.copyOf(buckets[k], bucketSize[k] * 2);
+		buckets[k][bucketSize[k]++] = s;
+	}
+
+	private void pushStack(int s) {
+		if (stackSize == stack.length)
+			stack = Arrays.copyOf(stack, stackSize * 2);
+		stack[stackSize++] = s;
+	}
+
+	private void add(int s) {
+		if (resetSize == reset.length)
+			reset = Arrays.copyOf(reset, resetSize * 2);
+		reset[resetSize++] = s;
+	}
+}
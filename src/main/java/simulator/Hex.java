@@ -1,94 +1,101 @@
 package simulator;
 
+/**
+ * A view of one hex of a world, whose contents are kept in the world's
+ * {@link WorldStore}. Changes made through the view change the world. A view
+ * of a location outside the world is always empty and ignores changes.
+ */
 public class Hex {
-	
-	private boolean rock;
-	private int food;
-	private Critter critter;
-	
+
+	private final WorldStore world;
+	private final int index; // index of the hex in the store, -1 if outside the world
+
 	/**
-	 * Constructs an empty Hex
+	 * Constructs a view of hex {@code index} of {@code world}
+	 * @param world
+	 * 		Store of the world
+	 * @param index
+	 * 		Index of the hex, -1 if outside the world
 	 */
-	public Hex() {
-		//represents no food, critter, rock
-		rock = false;
-		food = 0;
-		critter = null;
+	Hex(WorldStore world, int index) {
+		this.world = world;
+		this.index = index;
 	}
-	
+
 	/**
 	 * Adds a rock on this Hex
 	 */
 	public void addRock() {
-		rock = true;
+		if (index >= 0)
+			world.addRock(index);
 	}
-	
+
 	/**
 	 * Adds {@code amount} food to this hex
 	 * @param amount
 	 * 		Food to add
 	 */
 	public void addFood(int amount) {
-		food += amount;
+		if (index >= 0)
+			world.addFood(index, amount);
 	}
-	
+
 	/**
 	 * Places a critter on this hex
 	 * @param c
 	 * 		Critter program to place here
 	 */
 	public void addCritter(Critter c) {
-		critter = c;
+		if (index >= 0)
+			world.setCritter(index, c);
 	}
-	
+
 	/**
 	 * Returns food value of this hex
 	 * @return Amount of food
 	 */
 	public int getFood() {
-		return food;
+		return index < 0 ? 0 : world.food(index);
 	}
-	
+
 	/**
 	 * Returns critter on this hex
 	 * @return Critter on this hex
 	 */
 	public Critter getCritter() {
-		return critter;
+		return index < 0 ? null : world.critter(index);
 	}
-	
+
 	/**
 	 * Returns whether hex is empty
 	 * @return Whether is empty
 	 */
 	public boolean isEmpty() {
-		if (!rock && food == 0 && critter == null)
-			return true;
-		return false;
+		return index < 0 || world.isEmpty(index);
 	}
-	
+
 	/**
 	 * Returns whether hex is rock
 	 * @return True if is rock
 	 */
 	public boolean isRock() {
-		return rock;
+		return index >= 0 && world.isRock(index);
 	}
-	
+
 	/**
 	 * Returns whether hex has food
 	 * @return True if has food
 	 */
 	public boolean isFood() {
-		return food > 0;
+		return getFood() > 0;
 	}
-	
+
 	/**
 	 * Returns whether hex is occupied by a critter
 	 * @return True if critter is present
 	 */
 	public boolean isCritter() {
-		return critter != null;
+		return getCritter() != null;
 	}
-	
+
 }
@@ -0,0 +1,160 @@
+package simulator;
+
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.HashMap;
+
+import ast.Program;
+import interpret.Engine;
+import interpret.Executable;
+
+/**
+ * A table of the distinct programs of the critters in a world, so that
+ * critters whose programs are structurally equal share one program and one
+ * compiled form of it. Programs are looked up by
+ * {@link Program#structuralHash()}, and the programs with the same hash are
+ * kept in a chain and compared with {@link Program#sameAs(ast.Node)}, so a
+ * collision of hashes never gives a critter another program. Interning a
+ * program that is new takes constant time once the hashes of its rules are
+ * known, and no program is ever printed to be compared.
+ * <p>
+ * The table refers to programs and their compiled forms only through weak
+ * references, so a program that no critter runs any more is collected as
+ * usual and its entry is dropped the next time a program is interned.
+ * Interned programs are shared and must never be changed in place.
+ */
+class ProgramTable {
+
+	private final HashMap<Long, Entry> entries; // first of the chain of entries of each hash
+	private final ReferenceQueue<Program> collected; // entries whose program was collected
+
+	/**
+	 * A weak reference to an interned program, with the compiled form of the
+	 * program if a critter has compiled it
+	 */
+	private static class Entry extends WeakReference<Program> {
+		final long hash;
+		Entry next; // next entry with the same hash, null if none
+		WeakReference<Executable> compiled; // null if not yet compiled
+		Engine compiledBy; // engine that compiled the program, null if none has yet
+
+		Entry(Program p, long hash, ReferenceQueue<Program> q) {
+			super(p, q);
+			this.hash = hash;
+		}
+	}
+
+	ProgramTable() {
+		entries = new HashMap<Long, Entry>();
+		collected = new ReferenceQueue<Program>();
+	}
+
+	/**
+	 * Returns the interned program that is structurally equal to {@code p},
+	 * interning {@code p} itself if there is none
+	 *
+	 * @param p
+	 *            Program to intern
+	 * @return A program equal to {@code p} that is shared by all critters with
+	 *         an equal program
+	 */
+	synchronized Program intern(Program p) {
+		expunge();
+		long hash = p.structuralHash();
+		Entry first = entries.get(hash);
+		for (Entry e = first; e != null; e = e.next) {
+			Program interned = e.get();
+			if (interned != null && interned.sameAs(p))
+				return interned;
+		}
+
+		Entry e = new Entry(p, hash, collected);
+		e.next = first;
+		entries.put(hash, e);
+		return p;
+	}
+
+	/**
+	 * Returns the entry of interned program {@code p}, or null if it has none
+	 */
+	private Entry find(Program p) {
+		for (Entry e = entries.get(p.structuralHash()); e != null; e = e.next)
+			if (e.get() == p)
+				return e;
+		return null;
+	}
+
+	/**
+	 * Returns the form of interned program {@code p} compiled by
+	 * {@code engine}, or null if no living critter holds one
+	 *
+	 * @param p
+	 *            Interned program
+	 * @param engine
+	 *            Engine that compiles the program
+	 * @return The compiled program, or null if there is none
+	 */
+	synchronized Executable compiled(Program p, Engine engine) {
+		Entry e = find(p);
+		if (e == null || e.compiledBy != engine || e.compiled == null)
+			return null;
+		return e.compiled.get();
+	}
+
+	/**
+	 * Records {@code compiled} as the form of interned program {@code p}
+	 * compiled by {@code engine}, for other critters running {@code p} to use
+	 *
+	 * @param p
+	 *            Interned program
+	 * @param engine
+	 *            Engine that compiled the program
+	 * @param compiled
+	 *            The compiled program
+	 */
+	synchronized void setCompiled(Program p, Engine engine, Executable compiled) {
+		Entry e = find(p);
+		if (e == null)
+			return;
+		e.compiled = new WeakReference<Executable>(compiled);
+		e.compiledBy = engine;
+	}
+
+	/**
+	 * Returns the number of distinct programs in the table, including programs
+	 * that were collected but whose entries are not yet dropped
+	 *
+	 * @return Number of interned programs
+	 */
+	synchronized int size() {
+		expunge();
+		int n = 0;
+		for (Entry first : entries.values())
+			for (Entry e = first; e != null; e = e.next)
+				n++;
+		return n;
+	}
+
+	/**
+	 * Drops the entries of programs that were collected
+	 */
+	private void expunge() {
+		Reference<? extends Program> r;
+		while ((r = collected.poll()) != null) {
+			Entry e = (Entry) r;
+			Entry first = entries.get(e.hash);
+			if (first == e) {
+				if (e.next == null)
+					entries.remove(e.hash);
+				else
+					entries.put(e.hash, e.next);
+			} else
+				for (Entry prev = first; prev != null; prev = prev.next)
+					if (prev.next == e) {
+						prev.next = e.next;
+						break;
+					}
+		}
+	}
+}
@@ -0,0 +1,85 @@
+package simulator;
+
+import java.util.Random;
+
+/**
+ * A stream of random numbers that can be split into independent streams, in
+ * the way of {@link java.util.SplittableRandom}. The world has a stream made
+ * from its seed and every critter has its own stream split from the stream of
+ * the world or of its parent, so the random choices of a world depend only on
+ * its seed and critters draw numbers on several threads without sharing a
+ * stream.
+ * <p>
+ * Unlike {@link java.util.SplittableRandom} the stream is a {@link Random}, so
+ * it can be passed to program mutation, and its position can be saved and
+ * restored, so a turn that is undone can draw the same numbers again. It is
+ * not safe to use from several threads at once.
+ */
+class RandomStream extends Random {
+
+	private static final long serialVersionUID = 1L;
+	private static final long GOLDEN_GAMMA = 0x9e3779b97f4a7c15L;
+
+	private long state; // position in the stream
+	private final long gamma; // step between positions, odd
+
+	/**
+	 * Constructs the stream of seed {@code seed}
+	 *
+	 * @param seed
+	 *            Seed of the stream
+	 */
+	RandomStream(long seed) {
+		this(seed, GOLDEN_GAMMA);
+	}
+
+	private RandomStream(long state, long gamma) {
+		super(0);
+		this.state = state;
+		this.gamma = gamma;
+	}
+
+	@Override
+	protected int next(int bits) {
+		return (int) (mix64(state += gamma) >>> (64 - bits));
+	}
+
+	/**
+	 * Returns a new stream that is independent of this one, advancing this one
+	 */
+	RandomStream split() {
+		long s = mix64(state += gamma);
+		return new RandomStream(s, mixGamma(state += gamma));
+	}
+
+	/**
+	 * Returns the position of the stream, to be given to {@link #restore(long)}
+	 */
+	long position() {
+		return state;
+	}
+
+	/**
+	 * Moves the stream back to {@code position}, returned by
+	 * {@link #position()}, so it draws the same numbers again
+	 */
+	void restore(long position) {
+		state = position;
+	}
+
+	private static long mix64(long z) {
+		z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+		z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+		return z ^ (z >>> 31);
+	}
+
+	/**
+	 * Returns an odd step with enough bit changes to give a good stream
+	 */
+	private static long mixGamma(long z) {
+		z = (z ^ (z >>> 33)) * 0xff51afd7ed558ccdL;
+		z = (z ^ (z >>> 33)) * 0xc4ceb9fe1a85ec53L;
+		z = (z ^ (z >>> 33)) | 1L;
+		return Long.bitCount(z ^ (z >>> 1)) < 24 ? z ^ 0xaaaaaaaaaaaaaaaaL : z;
+	}
+}
@@ -0,0 +1,32 @@
+package simulator;
+
+/**
+ * The ways a simulator can run the turns of the critters in a step.
+ */
+public enum Schedule {
+	/**
+	 * Critters take their turns one after another, in the order they were
+	 * added, and each sees the effects of the turns before it
+	 */
+	SEQUENTIAL,
+	/**
+	 * Every critter first chooses its action on several threads, seeing the
+	 * world and the appearance of the other critters as they were at the start
+	 * of the step. The chosen actions are then performed one after another in
+	 * the order the critters were added. An action that is no longer possible
+	 * when its turn comes fails as it would in a sequential step, for example
+	 * moving onto a hex taken by an earlier critter, and a critter that was
+	 * killed by an earlier action does nothing. The result does not depend on
+	 * the number of threads.
+	 */
+	TWO_PHASE,
+	/**
+	 * Gives the same results as {@link #SEQUENTIAL}, but every critter first
+	 * chooses its action on several threads against the world as it was at
+	 * the start of the step, recording the hexes its choice read. The turns
+	 * are then taken in order: a turn that read no hex changed by an earlier
+	 * turn performs the action it chose, and any other turn is undone and run
+	 * again. Steps are faster when critters rarely see each other's changes.
+	 */
+	SPECULATIVE
+}
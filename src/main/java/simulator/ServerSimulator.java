@@ -6,7 +6,6 @@ import java.io.IOException;
 import java.io.InputStreamReader;
 import java.io.Reader;
 import java.util.ArrayList;
-import java.util.Random;
 
 import ast.Program;
 import interpret.Outcome;
@@ -23,16 +22,21 @@ public class ServerSimulator extends SimulatorImpl {
 
 	ArrayList<Critter> deadCritters; //pointer to Server's deadcritter list
 	int version; //version number
+	private VersionLog log; // log of the steps being run by advanceTime, null between them
 
 	/**
 	 * Makes a new world, size specified in constants and populated
 	 * randomly with rocks
+	 * @param seed  seed of the random numbers of the world
+	 * @param constants  constants of the rules of the world
+	 * @param storage  how the hexes of the world are stored
 	 * @param deadCritters  the list to add to when critters die
 	 * @param oldVersion  the version number of the world that this
 	 * is replacing.  If this is the first world, oldVersion = 0
 	 */
-	public ServerSimulator(ArrayList<Critter> deadCritters, int oldVersion) {
-		super();
+	public ServerSimulator(long seed, Constants constants, Storage storage, ArrayList<Critter> deadCritters,
+			int oldVersion) {
+		super(seed, constants, storage);
 		this.deadCritters = deadCritters;
 		version = oldVersion + 1;
 	}
@@ -41,17 +45,21 @@ public class ServerSimulator extends SimulatorImpl {
 	 * Creates a new world according to the specificied description (worldDef).
 	 * Ignores any critters 
 	 * @param worldDef  A String containing the sizes and inhabitants of world
+	 * @param seed  seed of the random numbers of the world
+	 * @param constants  constants of the rules of the world
+	 * @param storage  how the hexes of the world are stored
 	 * @param deadCritters  the list to add to when critters die
 	 * @param oldVersion  the version number of the world that this
 	 * is replacing.  If this is the first world, oldVersion = 0
 	 */
-	public ServerSimulator(String worldDef, ArrayList<Critter> deadCritters, int oldVersion) {
+	public ServerSimulator(String worldDef, long seed, Constants constants, Storage storage,
+			ArrayList<Critter> deadCritters, int oldVersion) {
+		super(seed, constants, (WorldStore) null); // the world is made from its size in worldDef
 
 		Reader r = new InputStreamReader(new ByteArrayInputStream(worldDef.getBytes()));
 		BufferedReader br = new BufferedReader(r);
 
-		critters = new ArrayList<Critter>();
-		constants = new Constants().getConstants();
+		critters = new CritterStore();
 
 		try {
 			readWord(br); // should be "name"
@@ -62,10 +70,7 @@ public class ServerSimulator extends SimulatorImpl {
 
 			this.name = name;
 			timeStep = 0;
-			world = new Hex[col][row];
-			for (int i = 0; i < col; i++)
-				for (int j = 0; j < row; j++)
-					world[i][j] = new Hex();
+			world = WorldStore.create(col, row, storage);
 
 			while (br.ready()) {
 				String word = readWord(br);
@@ -103,35 +108,40 @@ public class ServerSimulator extends SimulatorImpl {
 	 * @param n number of steps
 	 * @param log log of the last version in which each hex was changed
 	 */
-	public void advanceTime(int n, Integer[][] log) {
-
-		for (int i = 0; i < n; i++) {
-			ArrayList<Critter> matingCritters = new ArrayList<Critter>();
-			version++;
-			
-			for (int j = critters.size() - 1; j >= 0; j--) {
-				Critter c = critters.get(j);
-				log[c.col][c.row] = version;
-
-				Outcome o = c.advanceTime();
-				if (o.isMate())
-					matingCritters.add(c);
-
-				if (o.changed()) {
-					if(isInBounds(o.getCol(), o.getRow()))
-						log[o.getCol()][o.getRow()] = version;
-				}
-
+	public void advanceTime(int n, VersionLog log) {
+		this.log = log;
+		try {
+			for (int i = 0; i < n; i++) {
+				version++;
+				step();
+				timeStep++;
 			}
-
-			mateCritters(matingCritters);
-			timeStep++;
+		} finally {
+			this.log = null;
 		}
+	}
 
+	@Override
+	void turnTaken(Critter c, int col, int row, Outcome o) {
+		if (log == null)
+			return;
+		log.set(col, row, version);
+		if (o.changed() && isInBounds(o.getCol(), o.getRow()))
+			log.set(o.getCol(), o.getRow(), version);
 	}
 
 	/**
-	 * Add the specified critter to the simulation in a random location
+	 * Returns a new log of the versions in which the hexes of the world
+	 * change, in which every hex was last changed in the current version
+	 * @return the new log
+	 */
+	public VersionLog newLog() {
+		return new VersionLog(world, version);
+	}
+
+	/**
+	 * Add the specified critter to the simulation in a random empty location,
+	 * each as likely as any other
 	 * @param program 
 	 * 			Critter's program
 	 * @param species
@@ -146,16 +156,12 @@ public class ServerSimulator extends SimulatorImpl {
 	 * 			whether or not critter was added
 	 */	
 	public boolean loadCritter(String program, String species, int[] mem, int critterId, int createId) {
-		Random rand = new Random();
-		int col = -1;
-		int row = -1;
-		while (!isInBounds(col, row)) {
-			col = rand.nextInt(world.length);
-			row = rand.nextInt(world[0].length);
-		}
-		int dir = rand.nextInt(6);
+		int i = world.randomEmpty(random);
+		if (i < 0)
+			return false;
+		int dir = random.nextInt(6);
 		version++;
-		return loadCritter(program, col, row, dir, species, mem, critterId, createId);
+		return loadCritter(program, world.col(i), world.row(i), dir, species, mem, critterId, createId);
 	}
 
 	/**
@@ -185,12 +191,13 @@ public class ServerSimulator extends SimulatorImpl {
 		if (p == null)
 			return false;
 
-		Critter c = new Critter(p, species, col, row, mem, dir, this);
+		// Each critter gets its own copy, as several may be made from one request
+		Critter c = new Critter(p, species, col, row, mem.clone(), dir, this);
 		c.setIds(critId, createId);
 
 		// check if is in bounds and is empty
 		if (isInBounds(col, row) && isEmpty(col, row)) {
-			world[col][row].addCritter(c);
+			world.setCritter(world.index(col, row), c);
 			critters.add(c);
 			version++;
 			return true;
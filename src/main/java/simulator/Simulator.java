@@ -3,11 +3,18 @@ package simulator;
 public interface Simulator {
 	
 	/**
-	 * Returns the hex map
+	 * Returns the number of columns of the world
 	 * 
-	 * @return The hex map
+	 * @return Number of columns
 	 */
-	public Hex[][] getWorld();
+	public int getColumns();
+	
+	/**
+	 * Returns the number of rows of the world
+	 * 
+	 * @return Number of rows
+	 */
+	public int getRows();
 	
 	/**
 	 * Loads a critter from {@code file} to a random hex in the world
@@ -7,12 +7,18 @@ import java.io.FileReader;
 import java.io.IOException;
 import java.io.Reader;
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
 import java.util.Random;
+import java.util.SplittableRandom;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
 
 import ast.Program;
 import ast.ProgramImpl;
 import ast.Rule;
+import interpret.Engine;
 import interpret.Outcome;
 import parse.Constants;
 import parse.Parser;
@@ -21,10 +27,26 @@ import parse.SpecParser;
 
 public class SimulatorImpl implements Simulator {
 	protected String name; //Was private
-	protected Hex[][] world; //Was private
-	protected ArrayList<Critter> critters; //Was private
-	protected HashMap<String, Double> constants;
+	protected WorldStore world; //Was private
+	protected CritterStore critters; //Was private
+	protected Constants constants = Constants.defaults(); // rules of the world
 	protected int timeStep;
+	protected Engine engine = Engine.COMPILED;
+	protected Schedule schedule = Schedule.SEQUENTIAL;
+	private int threads = Runtime.getRuntime().availableProcessors(); // threads of parallel steps
+	private ForkJoinPool pool; // runs the first phase of parallel steps, null until one runs
+	private Speculation speculation; // checks the turns of speculative steps, null until one runs
+	private boolean skipQuiescent = true; // whether turns whose inputs have not changed are skipped
+	private boolean foodField = true; // whether smell reads the distances to food kept by the world
+	long turnsRun; // sequential turns that ran the critter's program
+	long turnsSkipped; // sequential turns that performed the last action again
+	final ProgramTable programs = new ProgramTable(); // distinct programs of the critters
+	private long seed = new SplittableRandom().nextLong(); // seed of the random numbers of the world
+	RandomStream random = new RandomStream(seed); // random numbers of the world, split for each critter
+	
+	// Approximate size of an AST node, with its header, parent, token type,
+	// children and cached size, on a 64-bit VM with compressed references
+	private static final int AST_NODE_BYTES = 32;
 	String filepath;
 	
 	/**
@@ -32,24 +54,82 @@ public class SimulatorImpl implements Simulator {
 	 * 1/8 of the world being rocks and no food.
 	 */
 	public SimulatorImpl() {
-		critters = new ArrayList<Critter>();
-		constants = new Constants().getConstants();
-		int col = constants.get("COLUMNS").intValue();
-		int row = constants.get("ROWS").intValue();
-		world = new Hex[col][row];
-		for (int i = 0; i < col; i++)
-			for (int j = 0; j < row; j++)
-				world[i][j] = new Hex();
-		timeStep = 0;
+		this(new SplittableRandom().nextLong());
+	}
+	
+	/**
+	 * Constructs a new Simulator like {@link #SimulatorImpl()}, whose random
+	 * numbers are all drawn from seed {@code seed}. Worlds made with the same
+	 * seed, given the same critters and stepped in the same way, are the
+	 * same, whatever the engine, schedule and number of threads.
+	 * 
+	 * @param seed
+	 *        Seed of the random numbers of the world
+	 */
+	public SimulatorImpl(long seed) {
+		this(seed, Constants.defaults());
+	}
+	
+	/**
+	 * Constructs a new Simulator like {@link #SimulatorImpl(long)}, whose
+	 * rules are {@code constants}, including the size of the world
+	 * 
+	 * @param seed
+	 *        Seed of the random numbers of the world
+	 * @param constants
+	 *        Constants of the world, such as
+	 *        {@code Constants.defaults().with(overrides)}
+	 */
+	public SimulatorImpl(long seed, Constants constants) {
+		this(seed, constants, Storage.DENSE);
+	}
+	
+	/**
+	 * Constructs a new Simulator like {@link #SimulatorImpl(long, Constants)},
+	 * whose hexes are stored as {@code storage} says. A sparse world is meant
+	 * to be mostly empty, so it gets no rocks and is made at once.
+	 * 
+	 * @param seed
+	 *        Seed of the random numbers of the world
+	 * @param constants
+	 *        Constants of the world
+	 * @param storage
+	 *        How the hexes of the world are stored
+	 */
+	public SimulatorImpl(long seed, Constants constants, Storage storage) {
+		this(seed, constants, WorldStore.create(constants.columns, constants.rows, storage));
 		
-		int numRocks = (col * row) / 8; // 1/8 of world will be rocky
-		Random r = new Random();
-		for (int i = 0; i < numRocks; i++)
-			addRock(r.nextInt(col), r.nextInt(row));
+		if (storage == Storage.DENSE) {
+			int col = constants.columns;
+			int row = constants.rows;
+			int numRocks = (col * row) / 8; // 1/8 of world will be rocky
+			for (int i = 0; i < numRocks; i++)
+				addRock(random.nextInt(col), random.nextInt(row));
+		}
 		
 		name = "Gates G01";
 	}
 	
+	/**
+	 * Constructs a new Simulator whose random numbers are all drawn from seed
+	 * {@code seed}, with world {@code world} and no critters
+	 * 
+	 * @param seed
+	 *        Seed of the random numbers of the world
+	 * @param constants
+	 *        Constants of the world
+	 * @param world
+	 *        Hexes of the world, or null for a subclass to make them
+	 */
+	SimulatorImpl(long seed, Constants constants, WorldStore world) {
+		this.seed = seed;
+		this.constants = constants;
+		random = new RandomStream(seed);
+		critters = new CritterStore();
+		this.world = world;
+		timeStep = 0;
+	}
+	
 	/**
 	 * Blank hex map of cols x rows
 	 * @param cols
@@ -58,12 +138,23 @@ public class SimulatorImpl implements Simulator {
 	 * 		Number of rows
 	 */
 	public SimulatorImpl(int col, int row) {
-		critters = new ArrayList<Critter>();
+		this(col, row, Storage.DENSE);
+	}
+	
+	/**
+	 * Blank hex map of cols x rows, whose hexes are stored as {@code storage}
+	 * says. A sparse world of any size is made at once.
+	 * @param cols
+	 * 		Number of col
+	 * @param rows
+	 * 		Number of rows
+	 * @param storage
+	 * 		How the hexes of the world are stored
+	 */
+	public SimulatorImpl(int col, int row, Storage storage) {
+		critters = new CritterStore();
 		
-		world = new Hex[col][row];
-		for (int i = 0; i < col; i++)
-			for (int j = 0; j < row; j++)
-				world[i][j] = new Hex();
+		world = WorldStore.create(col, row, storage);
 		timeStep = 0;
 		
 		name = "krusty krab";
@@ -79,8 +170,7 @@ public class SimulatorImpl implements Simulator {
 		try {
 			BufferedReader br = new BufferedReader(new FileReader(file));
 			
-			critters = new ArrayList<Critter>();
-			constants = new Constants().getConstants();
+			critters = new CritterStore();
 			// figuring out folder for loading critters
 			// String[] paths = file.split("\\");
 			// filepath = "";
@@ -102,10 +192,7 @@ public class SimulatorImpl implements Simulator {
 			
 			this.name = name;
 			timeStep = 0;
-			world = new Hex[col][row];
-			for (int i = 0; i < col; i++)
-				for (int j = 0; j < row; j++)
-					world[i][j] = new Hex();
+			world = WorldStore.create(col, row, Storage.DENSE);
 				
 			while (br.ready()) {
 				String word = readWord(br);
@@ -167,7 +254,7 @@ public class SimulatorImpl implements Simulator {
 	 */
 	public boolean addRock(int col, int row) {
 		if (isInBounds(col, row) && isEmpty(col, row)) {
-			world[col][row].addRock();
+			world.addRock(world.index(col, row));
 			return true;
 		}
 		
@@ -186,7 +273,7 @@ public class SimulatorImpl implements Simulator {
 	 */
 	public boolean addFood(int col, int row, int amount) {
 		if (isInBounds(col, row) && isEmpty(col, row)) {
-			world[col][row].addFood(amount);
+			world.addFood(world.index(col, row), amount);
 			return true;
 		}
 		
@@ -195,28 +282,25 @@ public class SimulatorImpl implements Simulator {
 	
 	public void addCritter(int col, int row, Critter c) {
 		if (isInBounds(col, row) && isEmpty(col, row)) {
-			world[col][row].addCritter(c);
+			world.setCritter(world.index(col, row), c);
 			critters.add(c);
 		}
 	}
 	
 	/**
-	 * Loads a critter from {@code file} to a random hex in the world
+	 * Loads a critter from {@code file} to a random empty hex in the world,
+	 * each as likely as any other
 	 * 
 	 * @param file
 	 *        Critter program file
-	 * @return Whether critter was successfully placed
+	 * @return Whether critter was successfully placed, false if no hex is empty
 	 */
 	public boolean loadCritter(String file) {
-		Random rand = new Random();
-		int col = -1;
-		int row = -1;
-		while (!isInBounds(col, row)) {
-			col = rand.nextInt(constants.get("COLUMNS").intValue());
-			row = rand.nextInt(constants.get("ROWS").intValue());
-		}
-		int dir = rand.nextInt(6);
-		return loadCritter(file, col, row, dir);
+		int i = world.randomEmpty(random);
+		if (i < 0)
+			return false;
+		int dir = random.nextInt(6);
+		return loadCritter(file, world.col(i), world.row(i), dir);
 	}
 	
 	/**
@@ -261,7 +345,7 @@ public class SimulatorImpl implements Simulator {
 			
 			// check if is in bounds and is empty
 			if (isInBounds(col, row) && isEmpty(col, row)) {
-				world[col][row].addCritter(c);
+				world.setCritter(world.index(col, row), c);
 				critters.add(c);
 				return true;
 			}
@@ -282,44 +366,160 @@ public class SimulatorImpl implements Simulator {
 	 *        Steps to advance
 	 */
 	public void advanceTime(int n) {
+		for (int i = 0; i < n; i++)
+			step();
 		
-		for (int i = 0; i < n; i++) {
-			ArrayList<Critter> matingCritters = new ArrayList<Critter>();
-			
-			for (int j = critters.size() - 1; j >= 0; j--) {
-				Critter c = critters.get(j);
-				Outcome o = c.advanceTime();
-				if (o.isMate())
-					matingCritters.add(c);
+		timeStep += n;
+	}
+	
+	/**
+	 * Runs one step: every critter living at its start takes a turn, in the
+	 * way set by the schedule, and then the critters that chose to mate are
+	 * paired
+	 */
+	void step() {
+		ArrayList<Critter> matingCritters = new ArrayList<Critter>();
+		critters.startStep();
+		if (schedule == Schedule.SPECULATIVE) {
+			if (speculation == null || speculation.world != world)
+				speculation = new Speculation(world);
+			speculation.startStep();
+		}
+		if (schedule != Schedule.SEQUENTIAL)
+			decide(schedule == Schedule.SPECULATIVE);
+		
+		for (int j = 0; j < critters.size(); j++) {
+			Critter c = critters.get(j);
+			if (c == null)
+				continue; // died earlier in this step
+			int col = c.col;
+			int row = c.row;
+			int before = c.pending ? c.appearence(c.posture) : c.appearence();
+			Outcome o;
+			switch (schedule) {
+			case TWO_PHASE:
+				o = c.commit();
+				break;
+			case SPECULATIVE:
+				o = speculation.turn(c);
+				break;
+			default:
+				o = c.advanceTime();
 			}
+			c.pending = false;
+			int now = world.index(c.col, c.row);
+			if (now >= 0 && world.critter(now) == c && c.appearence() != before)
+				world.touch(now); // critters that saw it may see it differently
+			turnTaken(c, col, row, o);
+			if (o.isMate())
+				matingCritters.add(c);
+		}
 		
-			mateCritters(matingCritters);
+		mateCritters(matingCritters);
+		critters.endStep();
+	}
+	
+	/**
+	 * Lets every critter choose its action on the threads of the pool, without
+	 * performing it. Until they take their turns, critters are seen with the
+	 * posture they had before any of them chose.
+	 * 
+	 * @param speculative
+	 *        Whether the critters record what their choices depend on
+	 */
+	private void decide(boolean speculative) {
+		int n = critters.size();
+		for (int j = 0; j < n; j++) {
+			Critter c = critters.get(j);
+			c.posture = c.getMem()[7];
+			c.pending = true;
 		}
 		
-		timeStep += n;
+		if (pool == null)
+			pool = new ForkJoinPool(threads);
+		pool.invoke(new Decide(critters, 0, n, speculative));
+	}
+	
+	/**
+	 * Lets the critters in a range of slots choose their actions, splitting
+	 * the range between threads
+	 */
+	private static class Decide extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+		private static final int SLICE = 64; // slots decided by a single task
+		private final CritterStore critters;
+		private final int from;
+		private final int to;
+		private final boolean speculative;
+		
+		Decide(CritterStore critters, int from, int to, boolean speculative) {
+			this.critters = critters;
+			this.from = from;
+			this.to = to;
+			this.speculative = speculative;
+		}
+		
+		@Override
+		protected void compute() {
+			if (to - from <= SLICE) {
+				for (int j = from; j < to; j++) {
+					if (speculative)
+						critters.get(j).speculate();
+					else
+						critters.get(j).decide();
+				}
+				return;
+			}
+			int mid = (from + to) >>> 1;
+			invokeAll(new Decide(critters, from, mid, speculative), new Decide(critters, mid, to, speculative));
+		}
+	}
+	
+	/**
+	 * Called after critter {@code c} takes its turn in a step
+	 * 
+	 * @param c
+	 *        Critter that took its turn
+	 * @param col
+	 *        Column of the critter before its turn
+	 * @param row
+	 *        Row of the critter before its turn
+	 * @param o
+	 *        Outcome of the turn
+	 */
+	void turnTaken(Critter c, int col, int row, Outcome o) {
 	}
 	
+	/**
+	 * Mates the critters that chose to mate in pairs. A critter is paired with
+	 * the critter ahead of it if that critter also chose to mate and faces it.
+	 * Pairs are found in the order of {@code matingCritters}, and a critter
+	 * that mated is not paired again.
+	 * 
+	 * @param matingCritters
+	 *        Critters that chose to mate this step
+	 */
 	public void mateCritters(ArrayList<Critter> matingCritters) {
-		for (int i = 0; i < matingCritters.size(); i++) {
-			Critter c1 = matingCritters.get(i);
-			Critter c2 = c1.hexAtDir(c1.getDir()).getCritter();
+		// Critters that chose to mate and have not yet mated as the first of a pair
+		HashSet<Critter> waiting = new HashSet<Critter>(matingCritters);
+		
+		for (Critter c1 : matingCritters) {
+			Hex ahead = c1.hexAtDir(c1.getDir());
+			Critter c2 = ahead == null ? null : ahead.getCritter();
 			
-			if (c2 != null) {
-				if (matingCritters.contains(c2)
-						&& c2.getDir() == (c1.getDir() + 3) % 6) {
-					if (mate(c1, c2)) {
-						c1.decEnergy(c1.complexity()
-								* constants.get("MATE_COST").intValue());
-						c2.decEnergy(c2.complexity()
-								* constants.get("MATE_COST").intValue());
-						
-					} else {
-						c1.decEnergy(c1.getMem()[3]);
-						c2.decEnergy(c2.getMem()[3]);
-					}
-					matingCritters.remove(i);
-					i--;
+			if (c2 != null && waiting.contains(c2)
+					&& c2.getDir() == (c1.getDir() + 3) % 6) {
+				if (mate(c1, c2)) {
+					c1.decEnergy(c1.complexity()
+							* constants.mateCost);
+					c2.decEnergy(c2.complexity()
+							* constants.mateCost);
+					
+				} else {
+					c1.decEnergy(c1.getMem()[3]);
+					c2.decEnergy(c2.getMem()[3]);
 				}
+				waiting.remove(c1);
 			}
 		}
 	}
@@ -339,24 +539,24 @@ public class SimulatorImpl implements Simulator {
 		ArrayList<Rule> rules1 = c1.program.getRules();
 		ArrayList<Rule> rules2 = c2.program.getRules();
 		
-		// Rules
-		Program babyPr = new ProgramImpl();
-		Random r = new Random();
+		// Rules, shared with the parents
+		ProgramImpl babyPr = new ProgramImpl();
+		Random r = c1.random;
 		int rulesSize = r.nextInt(2) == 0 ? rules1.size() : rules2.size();
 		
 		int min = Math.min(rules1.size(), rules2.size());
 		
 		for (int i = 0; i < min; i++) {
-			babyPr.add(r.nextInt(2) == 0 ? rules1.get(i) : rules2.get(i));
+			babyPr.addShared(r.nextInt(2) == 0 ? rules1.get(i) : rules2.get(i));
 		}
 		
 		if (rulesSize > rules1.size()) {
 			for (int i = min; i < rules1.size(); i++) {
-				babyPr.add(rules1.get(i));
+				babyPr.addShared(rules1.get(i));
 			}
 		} else {
 			for (int i = min; i < rules2.size(); i++) {
-				babyPr.add(rules2.get(i));
+				babyPr.addShared(rules2.get(i));
 			}
 		}
 		
@@ -368,7 +568,7 @@ public class SimulatorImpl implements Simulator {
 		babyMem[2] = r.nextInt(2) == 0 ? c1.mem[2] : c2.mem[2];
 		
 		babyMem[3] = 1;
-		babyMem[4] = constants.get("INITIAL_ENERGY").intValue();
+		babyMem[4] = constants.initialEnergy;
 		babyMem[6] = 0;
 		babyMem[7] = 0;
 		
@@ -395,31 +595,9 @@ public class SimulatorImpl implements Simulator {
 	 *        Baby critter to place behind the parent
 	 */
 	private void birthBehind(Critter parent, Critter baby) {
-		int newCol = parent.col;
-		int newRow = parent.row;
-		
-		switch (parent.getDir()) {
-		case 0:
-			newRow--;
-			break;
-		case 1:
-			newCol--;
-			newRow--;
-			break;
-		case 2:
-			newCol--;
-			break;
-		case 3:
-			newRow++;
-			break;
-		case 4:
-			newCol++;
-			newRow++;
-			break;
-		default:
-			newCol++;
-			break;
-		}
+		int behind = (parent.getDir() + 3) % 6;
+		int newCol = parent.colAtDir(behind);
+		int newRow = parent.rowAtDir(behind);
 		
 		baby.col = newCol;
 		baby.row = newRow;
@@ -428,18 +606,57 @@ public class SimulatorImpl implements Simulator {
 	}
 	
 	/**
-	 * Causes a critter {@code c} to die and removes it from the arraylist
+	 * Causes a critter {@code c} to die and removes it from the living critters
 	 * 
 	 * @param c
 	 *        Critter that dies
 	 */
 	public void die(Critter c) {
-		world[c.col][c.row].addCritter(null);
-		int food = c.getMem()[3] * constants.get("FOOD_PER_SIZE").intValue();
-		world[c.col][c.row].addFood(food);
+		int i = world.index(c.col, c.row);
+		world.setCritter(i, null);
+		int food = c.getMem()[3] * constants.foodPerSize;
+		world.addFood(i, food);
 		critters.remove(c);
 	}
 	
+	/**
+	 * Returns an estimate of the memory saved because the programs of living
+	 * critters share rules, compared to every critter holding its own copy of
+	 * each of its rules. Budding shares a whole program, mutation shares every
+	 * rule but the mutated one and mating shares the rules of both parents.
+	 * 
+	 * @return Estimated number of bytes saved
+	 */
+	public long programBytesSaved() {
+		IdentityHashMap<Rule, Rule> seen = new IdentityHashMap<Rule, Rule>();
+		long nodes = 0;
+		long unique = 0;
+		synchronized (this) {
+			for (Critter c : critters) {
+				if (c == null)
+					continue;
+				for (Rule rule : c.getProgram().getRules()) {
+					int size = rule.size();
+					nodes += size;
+					if (seen.put(rule, rule) == null)
+						unique += size;
+				}
+			}
+		}
+		return (nodes - unique) * AST_NODE_BYTES;
+	}
+	
+	/**
+	 * Returns the number of distinct programs among the critters of this world,
+	 * counting structurally equal programs once. Programs of critters that died
+	 * are counted until they are collected.
+	 * 
+	 * @return Number of distinct programs
+	 */
+	public int distinctPrograms() {
+		return programs.size();
+	}
+	
 	/**
 	 * Returns the number of critters alive in this world.
 	 * 
@@ -447,7 +664,7 @@ public class SimulatorImpl implements Simulator {
 	 */
 	public int numCritters() {
 		synchronized (this) {
-			return critters.size();
+			return critters.alive();
 		}
 	}
 	
@@ -461,16 +678,25 @@ public class SimulatorImpl implements Simulator {
 	 * @return Hex at the specified location.
 	 */
 	public Hex getHex(int col, int row) {
-		return world[col][row];
+		return new Hex(world, world.index(col, row));
+	}
+	
+	/**
+	 * Returns the number of columns of the world
+	 * 
+	 * @return Number of columns, 0 if the world file could not be read
+	 */
+	public int getColumns() {
+		return world == null ? 0 : world.cols;
 	}
 	
 	/**
-	 * Returns the hex map
+	 * Returns the number of rows of the world
 	 * 
-	 * @return The hex map
+	 * @return Number of rows, 0 if the world file could not be read
 	 */
-	public Hex[][] getWorld() {
-		return world;
+	public int getRows() {
+		return world == null ? 0 : world.rows;
 	}
 	
 	/**
@@ -483,10 +709,12 @@ public class SimulatorImpl implements Simulator {
 	}
 	
 	/**
-	 * Returns array list of living critters
-	 * @return Arraylist of living critters
+	 * Returns the living critters, in the order they were added. While a step
+	 * is running, critters that died during it are null and critters born
+	 * during it are not listed yet.
+	 * @return List of living critters
 	 */
-	public ArrayList<Critter> getCritters() {
+	public List<Critter> getCritters() {
 		return critters;
 	}
 	
@@ -500,9 +728,7 @@ public class SimulatorImpl implements Simulator {
 	 * @return Whether hex is in bounds
 	 */
 	public boolean isInBounds(int col, int row) {
-		return col < world.length && row < world[0].length
-				&& 2 * row - col < 2 * world[0].length - world.length
-				&& 2 * row - col >= 0 && row >= 0 && col >= 0;
+		return world.index(col, row) >= 0;
 	}
 	
 	/**
@@ -515,7 +741,8 @@ public class SimulatorImpl implements Simulator {
 	 * @return Whether hex is empty
 	 */
 	public boolean isEmpty(int col, int row) {
-		return getHex(col, row).isEmpty();
+		int i = world.index(col, row);
+		return i < 0 || world.isEmpty(i);
 	}
 	
 	/**
@@ -524,17 +751,158 @@ public class SimulatorImpl implements Simulator {
 	 * @return Number of empty hexes
 	 */
 	public int emptyHexes() {
-		int count = 0;
-		for (int i = 0; i < world.length; i++)
-			for (int j = (i / 2) + (i % 2); 2 * j - i < 2 * world[0].length
-					- world.length; j++) {
-				if (world[i][j].isEmpty())
-					count++;
-			}
-		return count;
+		return world.emptyHexes();
 	}
 	
 	public String getName() {
 		return name;
 	}
+	
+	/**
+	 * Returns the engine that runs critter programs in this world
+	 * 
+	 * @return Engine of this world
+	 */
+	public Engine getEngine() {
+		return engine;
+	}
+	
+	/**
+	 * Sets the engine that runs critter programs in this world, for example
+	 * to compare engines on the same world
+	 * 
+	 * @param engine
+	 *            Engine to use
+	 */
+	public void setEngine(Engine engine) {
+		this.engine = engine;
+	}
+	
+	/**
+	 * Returns the way the turns of the critters are run in each step
+	 * 
+	 * @return Schedule of this world
+	 */
+	public Schedule getSchedule() {
+		return schedule;
+	}
+	
+	/**
+	 * Sets the way the turns of the critters are run in each step
+	 * 
+	 * @param schedule
+	 *            Schedule to use
+	 */
+	public void setSchedule(Schedule schedule) {
+		this.schedule = schedule;
+	}
+	
+	/**
+	 * Returns the seed of the random numbers of the world
+	 * 
+	 * @return Seed of the world
+	 */
+	public long getSeed() {
+		return seed;
+	}
+	
+	/**
+	 * Returns the constants of the rules of the world
+	 * 
+	 * @return Constants of the world
+	 */
+	public Constants getConstants() {
+		return constants;
+	}
+	
+	/**
+	 * Returns the fraction of the turns of speculative steps that had to be
+	 * run again because an earlier turn changed what they depended on
+	 * 
+	 * @return Fraction of speculative turns run again, 0 if there were none
+	 */
+	public double rerunFraction() {
+		if (speculation == null || speculation.turns() == 0)
+			return 0;
+		return (double) speculation.reruns() / speculation.turns();
+	}
+	
+	/**
+	 * Returns whether turns whose inputs have not changed since a critter's
+	 * last turn perform the same action again without running the program
+	 * 
+	 * @return Whether quiescent turns are skipped
+	 */
+	public boolean skipsQuiescent() {
+		return skipQuiescent;
+	}
+	
+	/**
+	 * Sets whether turns whose inputs have not changed since a critter's last
+	 * turn perform the same action again without running the program. The
+	 * inputs of a turn are the hexes its sensors read, the memory slots it
+	 * read and the critter's position and direction; turns that use random
+	 * are never skipped. Skipping turns does not change the results of a step.
+	 * 
+	 * @param skip
+	 *            Whether quiescent turns are skipped
+	 */
+	public void setSkipQuiescent(boolean skip) {
+		skipQuiescent = skip;
+	}
+	
+	/**
+	 * Returns whether smell reads the distances to food that the world keeps
+	 * up to date, rather than searching from each critter
+	 * 
+	 * @return Whether the food field is used
+	 */
+	public boolean usesFoodField() {
+		return foodField;
+	}
+	
+	/**
+	 * Sets whether smell reads the distances to food that the world keeps up
+	 * to date, rather than searching from each critter. The field is measured
+	 * when smell first asks for it and is then repaired on every change to the
+	 * food, rocks and critters of the world, which pays off when many critters
+	 * smell. Smell gives the same values either way.
+	 * 
+	 * @param use
+	 *            Whether to use the food field
+	 */
+	public void setFoodField(boolean use) {
+		foodField = use;
+		if (!use)
+			world.dropFoodField();
+	}
+	
+	/**
+	 * Returns the fraction of sequential turns that were skipped because their
+	 * inputs had not changed since the critter's last turn
+	 * 
+	 * @return Fraction of turns skipped, 0 if there were none
+	 */
+	public double skippedFraction() {
+		long turns = turnsRun + turnsSkipped;
+		return turns == 0 ? 0 : (double) turnsSkipped / turns;
+	}
+	
+	/**
+	 * Sets the number of threads on which critters choose their actions in
+	 * two-phase and speculative steps. The results of a step do not depend on
+	 * it.
+	 * 
+	 * @param threads
+	 *            Number of threads, at least 1
+	 */
+	public void setThreads(int threads) {
+		if (threads < 1)
+			throw new IllegalArgumentException("threads: " + threads);
+		this.threads = threads;
+		if (pool != null) {
+			pool.shutdown();
+			pool = null;
+		}
+	}
 }
@@ -0,0 +1,136 @@
+package simulator;
+
+import java.util.Arrays;
+
+import parse.Constants;
+
+/**
+ * Finds the food nearest to a critter for the smell sensor. The search is
+ * over states of a critter walking from its hex, each a hex and a direction,
+ * where a turn left or right or a step forward onto an empty hex costs one.
+ * Since every move costs one, the states are kept in a queue in order of
+ * distance, which is all a bucket queue needs.
+ * <p>
+ * States are never more than {@link #MAX_DISTANCE} steps from the critter,
+ * so they are numbered by their offset from its hex, and the queue and the
+ * bitmap of states seen have a fixed size and are reused by every search. A
+ * search allocates nothing. Each hex looked at is told to the record of the
+ * turn once, however many states face it. A search is not safe to use from
+ * several threads at once, so each thread has its own, from {@link #get()}.
+ */
+class SmellSearch {
+
+	// MAX_SMELL_DISTANCE, which no world can override
+	static final int MAX_DISTANCE = Constants.defaults().maxSmellDistance;
+	static final int NONE = 1000000; // the value of smell when there is no food in range
+
+	private static final int SIDE = 2 * MAX_DISTANCE + 1; // width of the square of offsets of hexes looked at
+	private static final int STATES = SIDE * SIDE * 6;
+	private static final int CENTER = key(MAX_DISTANCE, MAX_DISTANCE); // added to offsets to make them positive
+
+	private static final ThreadLocal<SmellSearch> SEARCHES = ThreadLocal.withInitial(SmellSearch::new);
+
+	// The queue, one entry per state: its hex, its offset from the critter's
+	// hex packed as in key(), its direction, and the direction in which its
+	// path leaves the critter's hex
+	private final int[] hexes = new int[STATES];
+	private final int[] offsets = new int[STATES];
+	private final byte[] dirs = new byte[STATES];
+	private final byte[] leaving = new byte[STATES];
+	private int tail;
+	private final long[] seen = new long[(STATES + 63) >>> 6]; // states that have been queued
+	private final long[] looked = new long[(SIDE * SIDE + 63) >>> 6]; // hexes told to the record
+
+	/**
+	 * Returns the search of the current thread
+	 */
+	static SmellSearch get() {
+		return SEARCHES.get();
+	}
+
+	/**
+	 * Returns the distance to the food nearest to a critter on hex
+	 * {@code start} facing {@code dir}, times 1000, plus the direction in which
+	 * the critter should leave its hex to reach it, or {@link #NONE} if there
+	 * is no food within {@link #MAX_DISTANCE}. The distance is the number of
+	 * moves until the critter faces the food. Of several paths of the same
+	 * length, the one found first is taken.
+	 *
+	 * @param world
+	 *            World the critter is in
+	 * @param start
+	 *            Index of the critter's hex
+	 * @param dir
+	 *            Direction the critter faces
+	 * @param record
+	 *            Record of the turn, which is told every hex looked at, or
+	 *            null
+	 * @return Smell of the critter
+	 */
+	int search(WorldStore world, int start, int dir, TurnRecord record) {
+		Arrays.fill(seen, 0);
+		if (record != null)
+			Arrays.fill(looked, 0);
+		tail = 0;
+		push(start, key(0, 0), dir, dir);
+
+		int head = 0;
+		for (int dist = 0; dist < MAX_DISTANCE; dist++) {
+			int end = tail; // the states at distance dist
+			if (head == end)
+				break;
+			for (; head < end; head++) {
+				int i = hexes[head];
+				int d = dirs[head];
+				int ahead = world.neighbor(i, d);
+				int offset = offsets[head];
+				if (ahead >= 0) {
+					if (record != null) {
+						int h = (offset + key(WorldStore.DCOL[d], WorldStore.DROW[d]) + CENTER) / 6;
+						if ((looked[h >>> 6] & 1L << h) == 0) {
+							looked[h >>> 6] |= 1L << h;
+							record.read(ahead);
+						}
+					}
+					if (world.food(ahead) > 0)
+						return dist * 1000 + leaving[head];
+				}
+				if (dist + 1 == MAX_DISTANCE)
+					continue;
+
+				int from = leaving[head];
+				int right = (d + 1) % 6;
+				int left = (d + 5) % 6;
+				if (ahead >= 0 && world.isEmpty(ahead))
+					push(ahead, offset + key(WorldStore.DCOL[d], WorldStore.DROW[d]), d, from);
+				push(i, offset, left, i == start ? left : from);
+				push(i, offset, right, i == start ? right : from);
+			}
+		}
+		return NONE;
+	}
+
+	/**
+	 * Returns the packed offset of a hex {@code dcol} columns and {@code drow}
+	 * rows from the critter, in steps of one direction of a state
+	 */
+	private static int key(int dcol, int drow) {
+		return (dcol * SIDE + drow) * 6;
+	}
+
+	/**
+	 * Queues the state of hex {@code i}, at packed offset {@code offset},
+	 * facing {@code dir}, unless it has been queued before
+	 */
+	private void push(int i, int offset, int dir, int from) {
+		int s = offset + CENTER + dir;
+		if ((seen[s >>> 6] & 1L << s) != 0)
+			return;
+		seen[s >>> 6] |= 1L << s;
+		hexes[tail] = i;
+		offsets[tail] = offset;
+		dirs[tail] = (byte) dir;
+		leaving[tail] = (byte) from;
+		tail++;
+	}
+}
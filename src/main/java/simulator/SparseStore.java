@@ -0,0 +1,346 @@
+package simulator;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * A world that only stores the hexes that are not empty, for large worlds
+ * that are mostly empty. A hex with no entry is empty, so a new world takes
+ * no time and memory for its hexes.
+ * <p>
+ * The index of a hex is its column and row packed into an int, the row in the
+ * low bits, so neighbors are found by arithmetic. The world is cut into
+ * chunks of 64 by 64 hexes, each made when a hex in it is first changed, and
+ * each a small open addressing table of the hexes in it that have entries,
+ * keyed by the offset of the hex in the chunk. A table grows on its own, so
+ * growing never moves more than the hexes of one chunk.
+ * <p>
+ * A hex that becomes empty keeps its entry, with the stamp of its last change,
+ * until its chunk's table is full and is rebuilt without the entries of empty
+ * hexes. A hex without an entry is then taken to have changed when the last of
+ * the dropped entries of its chunk did, which may make a turn that looked at
+ * it run again but never lets a change go unseen.
+ * <p>
+ * The world does not keep a {@link FoodField}, which has a distance for every
+ * hex, so smell searches.
+ */
+class SparseStore extends WorldStore {
+
+	private static final int CHUNK_BITS = 6; // log2 of the width and height of a chunk
+
+	private final int rowBits; // bits of the row in an index
+	private final int rowMask;
+	private final int chunkRows; // chunks in a column of chunks
+	private final Chunk[] chunks; // null until a hex in the chunk changes
+	private int occupied; // hexes that are not empty
+
+	/**
+	 * Constructs an empty world of {@code cols} columns and {@code rows} rows
+	 *
+	 * @param cols
+	 *            Number of columns
+	 * @param rows
+	 *            Number of rows
+	 */
+	SparseStore(int cols, int rows) {
+		super(cols, rows);
+		rowBits = rows <= 1 ? 0 : 32 - Integer.numberOfLeadingZeros(rows - 1);
+		rowMask = (1 << rowBits) - 1;
+		if (((long) cols << rowBits) > Integer.MAX_VALUE)
+			throw new IllegalArgumentException("World of " + cols + " by " + rows + " is too large");
+		chunkRows = (rows >>> CHUNK_BITS) + 1;
+		chunks = new Chunk[((cols >>> CHUNK_BITS) + 1) * chunkRows];
+	}
+
+	@Override
+	int index(int col, int row) {
+		if (col < 0 || col >= cols || row < low[col] || row >= high[col])
+			return -1;
+		return col << rowBits | row;
+	}
+
+	@Override
+	int span() {
+		return cols << rowBits;
+	}
+
+	@Override
+	int neighbor(int i, int dir) {
+		return index((i >>> rowBits) + DCOL[dir], (i & rowMask) + DROW[dir]);
+	}
+
+	@Override
+	int col(int i) {
+		return i >>> rowBits;
+	}
+
+	@Override
+	int row(int i) {
+		return i & rowMask;
+	}
+
+	/**
+	 * Returns the chunk of hex {@code i}, null if it has not been made
+	 */
+	private Chunk chunk(int i) {
+		return chunks[(i >>> rowBits >>> CHUNK_BITS) * chunkRows + ((i & rowMask) >>> CHUNK_BITS)];
+	}
+
+	/**
+	 * Returns the chunk of hex {@code i}, making it if needed
+	 */
+	private Chunk makeChunk(int i) {
+		int k = (i >>> rowBits >>> CHUNK_BITS) * chunkRows + ((i & rowMask) >>> CHUNK_BITS);
+		Chunk c = chunks[k];
+		if (c == null)
+			chunks[k] = c = new Chunk();
+		return c;
+	}
+
+	/**
+	 * Returns the offset of hex {@code i} in its chunk
+	 */
+	private int local(int i) {
+		int mask = (1 << CHUNK_BITS) - 1;
+		return ((i >>> rowBits) & mask) << CHUNK_BITS | (i & mask);
+	}
+
+	@Override
+	boolean isRock(int i) {
+		Chunk c = chunk(i);
+		int s = c == null ? -1 : c.find(local(i));
+		return s >= 0 && c.rocks[s];
+	}
+
+	@Override
+	int food(int i) {
+		Chunk c = chunk(i);
+		int s = c == null ? -1 : c.find(local(i));
+		return s < 0 ? 0 : c.food[s];
+	}
+
+	@Override
+	Critter critter(int i) {
+		Chunk c = chunk(i);
+		int s = c == null ? -1 : c.find(local(i));
+		return s < 0 ? null : c.critters[s];
+	}
+
+	@Override
+	boolean isEmpty(int i) {
+		Chunk c = chunk(i);
+		int s = c == null ? -1 : c.find(local(i));
+		return s < 0 || c.isEmpty(s);
+	}
+
+	@Override
+	int emptyHexes() {
+		return size - occupied;
+	}
+
+	/**
+	 * {@inheritDoc} Hexes of the {@code cols} by {@code rows} rectangle are
+	 * drawn until one is in the world and empty, which takes few draws while
+	 * most of the world is empty.
+	 */
+	@Override
+	int randomEmpty(Random random) {
+		if (occupied == size)
+			return -1;
+		while (true) {
+			int i = index(random.nextInt(cols), random.nextInt(rows));
+			if (i >= 0 && isEmpty(i))
+				return i;
+		}
+	}
+
+	@Override
+	void storeRock(int i) {
+		Chunk c = makeChunk(i);
+		int s = c.slot(local(i));
+		boolean was = c.isEmpty(s);
+		c.rocks[s] = true;
+		count(was, c.isEmpty(s));
+	}
+
+	@Override
+	void storeFood(int i, int amount) {
+		Chunk c = makeChunk(i);
+		int s = c.slot(local(i));
+		boolean was = c.isEmpty(s);
+		c.food[s] += amount;
+		count(was, c.isEmpty(s));
+	}
+
+	@Override
+	void storeCritter(int i, Critter critter) {
+		Chunk c = makeChunk(i);
+		int s = c.slot(local(i));
+		boolean was = c.isEmpty(s);
+		c.critters[s] = critter;
+		count(was, c.isEmpty(s));
+	}
+
+	@Override
+	void storeClear(int i) {
+		Chunk c = makeChunk(i);
+		int s = c.slot(local(i));
+		boolean was = c.isEmpty(s);
+		c.rocks[s] = false;
+		c.food[s] = 0;
+		c.critters[s] = null;
+		count(was, true);
+	}
+
+	/**
+	 * Counts a hex that was empty if {@code was} and is empty if {@code is}
+	 */
+	private void count(boolean was, boolean is) {
+		if (was && !is)
+			occupied++;
+		else if (!was && is)
+			occupied--;
+	}
+
+	@Override
+	FoodField foodField() {
+		return null;
+	}
+
+	@Override
+	void setChangedAt(int i, int stamp) {
+		Chunk c = makeChunk(i);
+		c.changedAt[c.slot(local(i))] = stamp;
+	}
+
+	@Override
+	void clearChangedAt() {
+		for (Chunk c : chunks)
+			if (c != null) {
+				Arrays.fill(c.changedAt, 0);
+				c.dropped = 0;
+			}
+	}
+
+	@Override
+	boolean changedSince(int i, int stamp) {
+		Chunk c = chunk(i);
+		if (c == null)
+			return false;
+		int s = c.find(local(i));
+		return (s < 0 ? c.dropped : c.changedAt[s]) > stamp;
+	}
+
+	/**
+	 * The hexes of a chunk that have entries, in an open addressing table with
+	 * linear probing
+	 */
+	private static final class Chunk {
+
+		private static final int MIN_CAPACITY = 16;
+
+		int shift; // 32 minus log2 of the capacity
+		short[] keys; // offset of each entry's hex in the chunk plus one, 0 for a free slot
+		boolean[] rocks;
+		int[] food;
+		Critter[] critters; // null where there is no critter
+		int[] changedAt; // stamp of the last change to each entry's hex
+		int count; // entries
+		int dropped; // latest stamp of the entries dropped since the stamps started over
+
+		Chunk() {
+			allocate(MIN_CAPACITY);
+		}
+
+		private void allocate(int capacity) {
+			shift = 32 - Integer.numberOfTrailingZeros(capacity);
+			keys = new short[capacity];
+			rocks = new boolean[capacity];
+			food = new int[capacity];
+			critters = new Critter[capacity];
+			changedAt = new int[capacity];
+		}
+
+		private int hash(int local) {
+			return (local * 0x9e3779b1) >>> shift;
+		}
+
+		/**
+		 * Returns the slot of the hex at offset {@code local}, or -1 if it has
+		 * no entry
+		 */
+		int find(int local) {
+			int mask = keys.length - 1;
+			for (int s = hash(local);; s = (s + 1) & mask) {
+				int k = keys[s];
+				if (k == local + 1)
+					return s;
+				if (k == 0)
+					return -1;
+			}
+		}
+
+		/**
+		 * Returns the slot of the hex at offset {@code local}, giving it an
+		 * empty entry if it has none
+		 */
+		int slot(int local) {
+			int s = find(local);
+			if (s >= 0)
+				return s;
+			if ((count + 1) * 4 > keys.length * 3)
+				rebuild();
+			int mask = keys.length - 1;
+			for (s = hash(local); keys[s] != 0; s = (s + 1) & mask)
+				;
+			keys[s] = (short) (local + 1);
+			count++;
+			return s;
+		}
+
+		boolean isEmpty(int s) {
+			return !rocks[s] && food[s] == 0 && critters[s] == null;
+		}
+
+		/**
+		 * Moves the entries of hexes that are not empty to a table with room
+		 * for one more, dropping the others
+		 */
+		private void rebuild() {
+			short[] oldKeys = keys;
+			boolean[] oldRocks = rocks;
+			int[] oldFood = food;
+			Critter[] oldCritters = critters;
+			int[] oldChangedAt = changedAt;
+
+			int live = 0;
+			for (int s = 0; s < oldKeys.length; s++)
+				if (oldKeys[s] != 0 && !isEmpty(s))
+					live++;
+			int capacity = MIN_CAPACITY;
+			while ((live + 1) * 2 > capacity)
+				capacity *= 2;
+			allocate(capacity);
+
+			count = 0;
+			int mask = capacity - 1;
+			for (int j = 0; j < oldKeys.length; j++) {
+				if (oldKeys[j] == 0)
+					continue;
+				if (!oldRocks[j] && oldFood[j] == 0 && oldCritters[j] == null) {
+					dropped = Math.max(dropped, oldChangedAt[j]);
+					continue;
+				}
+				int s = hash(oldKeys[j] - 1);
+				while (keys[s] != 0)
+					s = (s + 1) & mask;
+				keys[s] = oldKeys[j];
+				rocks[s] = oldRocks[j];
+				food[s] = oldFood[j];
+				critters[s] = oldCritters[j];
+				changedAt[s] = oldChangedAt[j];
+				count++;
+			}
+		}
+	}
+}
@@ -0,0 +1,166 @@
+package simulator;
+
+import java.util.Arrays;
+
+import interpret.Outcome;
+
+/**
+ * Checks the turns of a speculative step in the order of the critters. Every
+ * critter has already chosen its action against the world as it was at the
+ * start of the step, recording the hexes it read. A turn whose hexes were not
+ * changed by the turns before it would have chosen the same action in a
+ * sequential step, so its action is performed; any other turn is undone and
+ * run again on the world as it is. The hexes each turn changes are stamped
+ * with the step, so checking a turn takes time proportional to its reads. A
+ * turn that used random drew the same numbers from the critter's own stream
+ * as it would have in a sequential step, and an undone turn draws them again.
+ * <p>
+ * A turn is taken to change the hex the critter started on, the hex it ended
+ * on and the hex reported by its outcome. Its own hex covers changes to the
+ * critter itself, such as attacks and tags of earlier critters. A turn is also
+ * run again if the world stamped a hex it read as changed during the step,
+ * which covers the distances to food that smell reads from next to the
+ * critter.
+ * <p>
+ * In a world with too many hexes for a stamp each, such as a large sparse
+ * world, the hexes changed during the step are kept in an open addressing
+ * table instead, which is emptied at the start of each step.
+ */
+class Speculation {
+
+	final WorldStore world;
+	private static final int MAX_STAMPS = 1 << 22; // most hexes given a stamp each
+	private final int[] written; // stamp of the last step in which each hex changed, null in large worlds
+	private int[] writtenSet; // in large worlds, the hexes changed in the step plus one, 0 for a free slot
+	private int writtenCount;
+	private int stamp;
+	private int worldEpoch; // epoch and change stamp of the world when the step started
+	private int worldStamp;
+	private long turns; // turns checked
+	private long reruns; // turns that had to be run again
+
+	Speculation(WorldStore world) {
+		this.world = world;
+		if (world.span() <= MAX_STAMPS)
+			written = new int[world.span()];
+		else {
+			written = null;
+			writtenSet = new int[64];
+		}
+	}
+
+	/**
+	 * Starts a step, forgetting the hexes changed by earlier steps
+	 */
+	void startStep() {
+		stamp++;
+		if (written == null) {
+			Arrays.fill(writtenSet, 0);
+			writtenCount = 0;
+		} else if (stamp == 0) { // wrapped around, so old stamps could match again
+			Arrays.fill(written, 0);
+			stamp = 1;
+		}
+		worldEpoch = world.epoch();
+		worldStamp = world.stamp();
+	}
+
+	/**
+	 * Takes the turn of critter {@code c}, which has speculatively chosen its
+	 * action, as it would be taken in a sequential step
+	 *
+	 * @param c
+	 *            Critter whose turn it is
+	 * @return Outcome of the turn
+	 */
+	Outcome turn(Critter c) {
+		int start = world.index(c.col, c.row);
+		TurnRecord r = c.speculated;
+		Outcome o;
+		turns++;
+		if (!changed(start) && !r.readAny(this) && !r.readChanged(world, worldEpoch, worldStamp))
+			o = c.commit();
+		else {
+			reruns++;
+			r.restore(c);
+			o = c.advanceTime();
+		}
+
+		write(start);
+		int end = world.index(c.col, c.row);
+		if (end >= 0)
+			write(end);
+		if (o.changed()) {
+			int i = world.index(o.getCol(), o.getRow());
+			if (i >= 0)
+				write(i);
+		}
+		return o;
+	}
+
+	/**
+	 * Returns whether a turn of the current step changed hex {@code i}
+	 */
+	boolean changed(int i) {
+		if (written != null)
+			return written[i] == stamp;
+		int mask = writtenSet.length - 1;
+		for (int s = hash(i, mask);; s = (s + 1) & mask) {
+			if (writtenSet[s] == i + 1)
+				return true;
+			if (writtenSet[s] == 0)
+				return false;
+		}
+	}
+
+	/**
+	 * Records that the current turn changed hex {@code i}
+	 */
+	private void write(int i) {
+		if (written != null) {
+			written[i] = stamp;
+			return;
+		}
+		if (changed(i))
+			return;
+		if ((writtenCount + 1) * 2 > writtenSet.length) {
+			int[] old = writtenSet;
+			writtenSet = new int[old.length * 2];
+			for (int k : old)
+				if (k != 0)
+					insert(k);
+		}
+		insert(i + 1);
+		writtenCount++;
+	}
+
+	/**
+	 * Puts {@code key}, a hex plus one, in a free slot of the table
+	 */
+	private void insert(int key) {
+		int mask = writtenSet.length - 1;
+		int s = hash(key - 1, mask);
+		while (writtenSet[s] != 0)
+			s = (s + 1) & mask;
+		writtenSet[s] = key;
+	}
+
+	private static int hash(int i, int mask) {
+		int h = i * 0x9e3779b1;
+		return (h ^ h >>> 16) & mask;
+	}
+
+	/**
+	 * Returns the number of turns checked
+	 */
+	long turns() {
+		return turns;
+	}
+
+	/**
+	 * Returns the number of turns that had to be run again
+	 */
+	long reruns() {
+		return reruns;
+	}
+}
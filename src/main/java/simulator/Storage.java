@@ -0,0 +1,21 @@
+package simulator;
+
+/**
+ * The ways a world can store its hexes, chosen when it is made.
+ */
+public enum Storage {
+	/**
+	 * Every hex is stored in arrays, with a table of its neighbors, so the
+	 * world takes time and memory for every hex when it is made and
+	 * simulates fastest
+	 */
+	DENSE,
+	/**
+	 * Only hexes that are not empty are stored, so a world that is mostly
+	 * empty is made at once and takes memory for its contents only. A world
+	 * made from the constants alone has no rocks. Looking
+	 * at a hex is a lookup in a table, and smell searches instead of reading
+	 * distances to food kept by the world.
+	 */
+	SPARSE
+}
@@ -0,0 +1,138 @@
+package simulator;
+
+import java.util.Arrays;
+
+/**
+ * What a critter's turn depended on: the hexes it read through its sensors,
+ * the memory slots it read, whether it used {@code random}, and the memory,
+ * position and direction of the critter before the turn.
+ * <p>
+ * A speculative turn is recorded so that it can be undone and run again if
+ * one of its hexes changes. A sequential turn is recorded so that the next
+ * turn can be skipped if none of its inputs changed, since the program would
+ * then choose the same action and write the same values to memory.
+ */
+class TurnRecord {
+
+	private int[] reads; // indices of the hexes read, possibly repeated
+	private int count; // number of reads
+	private int[] memReads; // memory slots read, possibly repeated
+	private int memCount; // number of memory slots read
+	boolean random; // whether the turn used random
+	private int[] mem; // memory of the critter before the turn
+	private long position; // position of the critter's random stream before the turn
+	private int col; // position and direction of the critter before the turn
+	private int row;
+	private int dir;
+	private int epoch; // epoch of the world's change stamps when the turn began
+	private int stamp; // change stamp of the world when the turn began
+	boolean valid; // whether the record describes the critter's last turn
+
+	TurnRecord() {
+		reads = new int[16];
+		memReads = new int[16];
+		mem = new int[0];
+	}
+
+	/**
+	 * Starts recording a turn of critter {@code c}
+	 */
+	void start(Critter c) {
+		int[] mem = c.mem;
+		count = 0;
+		memCount = 0;
+		random = false;
+		if (this.mem.length != mem.length)
+			this.mem = new int[mem.length];
+		System.arraycopy(mem, 0, this.mem, 0, mem.length);
+		position = c.random.position();
+	}
+
+	/**
+	 * Starts recording a turn of critter {@code c}, to be skipped later if
+	 * none of its inputs change
+	 */
+	void start(Critter c, WorldStore world) {
+		start(c);
+		col = c.col;
+		row = c.row;
+		dir = c.dir;
+		epoch = world.epoch();
+		stamp = world.stamp();
+		valid = true;
+	}
+
+	/**
+	 * Records that the turn read hex {@code i}
+	 */
+	void read(int i) {
+		if (count == reads.length)
+			reads = Arrays.copyOf(reads, count * 2);
+		reads[count++] = i;
+	}
+
+	/**
+	 * Records that the turn read memory slot {@code i}
+	 */
+	void readMem(int i) {
+		if (memCount == memReads.length)
+			memReads = Arrays.copyOf(memReads, memCount * 2);
+		memReads[memCount++] = i;
+	}
+
+	/**
+	 * Returns whether the turn read a hex that a turn before it in the
+	 * speculative step {@code step} changed
+	 */
+	boolean readAny(Speculation step) {
+		for (int j = 0; j < count; j++)
+			if (step.changed(reads[j]))
+				return true;
+		return false;
+	}
+
+	/**
+	 * Returns whether a turn of critter {@code c} now would depend on the same
+	 * inputs as the recorded turn: the critter has not moved or turned, the
+	 * memory slots read hold the same values, no hex read has changed and the
+	 * turn did not use random
+	 */
+	boolean unchanged(Critter c, WorldStore world) {
+		if (!valid || random || c.col != col || c.row != row || c.dir != dir || c.mem.length != mem.length)
+			return false;
+		for (int j = 0; j < memCount; j++)
+			if (c.mem[memReads[j]] != mem[memReads[j]])
+				return false;
+		return !readChanged(world, epoch, stamp);
+	}
+
+	/**
+	 * Returns whether a hex the turn read has changed since the stamp of
+	 * {@code world} was {@code stamp} in epoch {@code epoch}
+	 */
+	boolean readChanged(WorldStore world, int epoch, int stamp) {
+		if (world.epoch() != epoch)
+			return true;
+		for (int j = 0; j < count; j++)
+			if (world.changedSince(reads[j], stamp))
+				return true;
+		return false;
+	}
+
+	/**
+	 * Puts what the turn could change back into critter {@code c} as it was
+	 * before the turn: the position of its random stream, and in its memory
+	 * the pass count, the posture and the slots from 8 on. The other slots are
+	 * only changed by actions, which a speculative turn does not perform, so
+	 * they keep the changes made by earlier turns, such as damage from
+	 * attacks.
+	 */
+	void restore(Critter c) {
+		int[] mem = c.mem;
+		c.random.restore(position);
+		mem[5] = this.mem[5];
+		mem[7] = this.mem[7];
+		if (mem.length > 8)
+			System.arraycopy(this.mem, 8, mem, 8, mem.length - 8);
+	}
+}
@@ -0,0 +1,70 @@
+package simulator;
+
+import java.util.Arrays;
+import java.util.HashMap;
+
+/**
+ * The last version of a world in which each of its hexes changed. Every hex
+ * starts at the version the world had when the log was made. A dense world
+ * keeps the version of every hex in an array. A sparse world keeps only the
+ * versions of the hexes that changed since, in a map by index, so a large
+ * world that is mostly empty gets its log at once.
+ */
+public class VersionLog {
+
+	private final WorldStore world;
+	private final int start; // version of every hex that has not changed
+	private final int[] versions; // version of each hex by index, null in a sparse world
+	private final HashMap<Integer, Integer> changed; // versions of the hexes that changed, null in a dense world
+
+	/**
+	 * Constructs the log of {@code world}, in which every hex was last changed
+	 * in version {@code start}
+	 */
+	VersionLog(WorldStore world, int start) {
+		this.world = world;
+		this.start = start;
+		if (world instanceof SparseStore) {
+			versions = null;
+			changed = new HashMap<Integer, Integer>();
+		} else {
+			versions = new int[world.size];
+			Arrays.fill(versions, start);
+			changed = null;
+		}
+	}
+
+	/**
+	 * Records that the hex at ({@code col}, {@code row}), which is in the
+	 * world, changed in version {@code version}
+	 */
+	void set(int col, int row, int version) {
+		int i = world.index(col, row);
+		if (versions != null)
+			versions[i] = version;
+		else
+			changed.put(i, version);
+	}
+
+	/**
+	 * Returns the last version in which the hex at ({@code col}, {@code row})
+	 * changed
+	 *
+	 * @param col
+	 *            Column of the hex
+	 * @param row
+	 *            Row of the hex
+	 * @return Version of the last change to the hex
+	 * @throws IllegalArgumentException
+	 *             If the hex is not in the world
+	 */
+	public int get(int col, int row) {
+		int i = world.index(col, row);
+		if (i < 0)
+			throw new IllegalArgumentException("No hex at " + col + ", " + row);
+		if (versions != null)
+			return versions[i];
+		Integer v = changed.get(i);
+		return v == null ? start : v;
+	}
+}
@@ -0,0 +1,252 @@
+package simulator;
+
+import java.util.Random;
+
+/**
+ * The contents of the hexes of a world. Each hex inside the world has an
+ * index, and is described by whether it is a rock, an amount of food and the
+ * critter on it. {@link Hex} objects are views of single entries. How the
+ * hexes are stored is up to the subclass, chosen with a {@link Storage}.
+ * <p>
+ * Row r of column c is in the world if 0 <= 2r - c < 2 rows - cols, so the
+ * hexes of each column are a range of rows, kept for every column.
+ * <p>
+ * Every change to a hex is stamped with a count of the changes to the world,
+ * so a critter can tell whether the hexes it looked at have changed since. A
+ * critter on a hex whose appearance changes counts as a change to the hex, as
+ * does a change to the distances to food from the hex.
+ * <p>
+ * Once smell has asked for it, a world that keeps a {@link FoodField} keeps it
+ * up to date with every change to its hexes.
+ */
+abstract class WorldStore {
+
+	// Change in column and row of a step in each direction
+	static final int[] DCOL = { 0, 1, 1, 0, -1, -1 };
+	static final int[] DROW = { 1, 1, 0, -1, -1, 0 };
+
+	final int cols;
+	final int rows;
+	final int size; // number of hexes in the world
+	final int[] low; // lowest row of each column in the world
+	final int[] high; // one past the highest row of each column in the world
+
+	private int stamp; // number of changes in the current epoch
+	private int epoch; // number of times the stamps wrapped around
+	private volatile FoodField field; // distances to food, null until smell asks for them
+
+	/**
+	 * Constructs an empty world of {@code cols} columns and {@code rows} rows
+	 *
+	 * @param cols
+	 *            Number of columns
+	 * @param rows
+	 *            Number of rows
+	 */
+	WorldStore(int cols, int rows) {
+		this.cols = cols;
+		this.rows = rows;
+		low = new int[cols];
+		high = new int[cols];
+
+		long n = 0;
+		for (int c = 0; c < cols; c++) {
+			low[c] = Math.min(rows, (c + 1) / 2);
+			high[c] = Math.max(low[c], Math.min(rows, Math.floorDiv(2 * rows - cols + c - 1, 2) + 1));
+			n += high[c] - low[c];
+		}
+		if (n > Integer.MAX_VALUE / 6) // tables have an entry for each direction of each hex
+			throw new IllegalArgumentException("World of " + cols + " by " + rows + " is too large");
+		size = (int) n;
+	}
+
+	/**
+	 * Returns a new empty world of {@code cols} columns and {@code rows} rows,
+	 * stored as {@code storage} says
+	 */
+	static WorldStore create(int cols, int rows, Storage storage) {
+		return storage == Storage.SPARSE ? new SparseStore(cols, rows) : new DenseStore(cols, rows);
+	}
+
+	/**
+	 * Returns the index of the hex at ({@code col}, {@code row}), or -1 if it is
+	 * not in the world
+	 */
+	abstract int index(int col, int row);
+
+	/**
+	 * Returns one more than the largest index of a hex
+	 */
+	abstract int span();
+
+	/**
+	 * Returns the index of the hex next to hex {@code i} in direction
+	 * {@code dir}, from 0 to 5, or -1 if it is not in the world
+	 */
+	abstract int neighbor(int i, int dir);
+
+	/**
+	 * Returns the column of hex {@code i}
+	 */
+	abstract int col(int i);
+
+	/**
+	 * Returns the row of hex {@code i}
+	 */
+	abstract int row(int i);
+
+	abstract boolean isRock(int i);
+
+	abstract int food(int i);
+
+	abstract Critter critter(int i);
+
+	boolean isEmpty(int i) {
+		return !isRock(i) && food(i) == 0 && critter(i) == null;
+	}
+
+	/**
+	 * Returns the number of empty hexes
+	 */
+	abstract int emptyHexes();
+
+	/**
+	 * Returns the index of an empty hex chosen uniformly at random with
+	 * {@code random}, or -1 if no hex is empty
+	 */
+	abstract int randomEmpty(Random random);
+
+	// Changes to the contents of hex i, which do not stamp it or repair the
+	// food field
+	abstract void storeRock(int i);
+
+	abstract void storeFood(int i, int amount);
+
+	abstract void storeCritter(int i, Critter c);
+
+	abstract void storeClear(int i);
+
+	/**
+	 * Sets the stamp of the last change to hex {@code i}
+	 */
+	abstract void setChangedAt(int i, int stamp);
+
+	/**
+	 * Sets the stamp of every hex to 0
+	 */
+	abstract void clearChangedAt();
+
+	/**
+	 * Returns whether hex {@code i} changed after the world's stamp was
+	 * {@code stamp}, in the current epoch
+	 */
+	abstract boolean changedSince(int i, int stamp);
+
+	void addRock(int i) {
+		FoodField f = field;
+		int before = f == null ? 0 : smells(i);
+		storeRock(i);
+		touch(i);
+		if (f != null && smells(i) != before)
+			f.changed(i);
+	}
+
+	void addFood(int i, int amount) {
+		FoodField f = field;
+		int before = f == null ? 0 : smells(i);
+		storeFood(i, amount);
+		touch(i);
+		if (f != null && smells(i) != before)
+			f.changed(i);
+	}
+
+	void setCritter(int i, Critter c) {
+		FoodField f = field;
+		int before = f == null ? 0 : smells(i);
+		storeCritter(i, c);
+		touch(i);
+		if (f != null && smells(i) != before)
+			f.changed(i);
+	}
+
+	/**
+	 * Removes the rock, food and critter of hex {@code i}
+	 */
+	void clear(int i) {
+		FoodField f = field;
+		int before = f == null ? 0 : smells(i);
+		storeClear(i);
+		touch(i);
+		if (f != null && smells(i) != before)
+			f.changed(i);
+	}
+
+	/**
+	 * Returns what the distances to food depend on at hex {@code i}: whether
+	 * it is empty and whether it has food
+	 */
+	private int smells(int i) {
+		return (isEmpty(i) ? 1 : 0) | (food(i) > 0 ? 2 : 0);
+	}
+
+	/**
+	 * Returns the distances to food of the world, measuring them if this is
+	 * the first time they are asked for, or null if the world does not keep
+	 * them. Safe to call from several threads while the world does not
+	 * change.
+	 */
+	FoodField foodField() {
+		FoodField f = field;
+		if (f == null)
+			synchronized (this) {
+				f = field;
+				if (f == null)
+					field = f = new FoodField(this);
+			}
+		return f;
+	}
+
+	/**
+	 * Stops keeping the distances to food. Since turns that smelled relied on
+	 * the field to stamp changes, the stamps start over.
+	 */
+	void dropFoodField() {
+		if (field == null)
+			return;
+		field = null;
+		newEpoch();
+	}
+
+	/**
+	 * Records a change to hex {@code i}
+	 */
+	void touch(int i) {
+		if (stamp == Integer.MAX_VALUE)
+			newEpoch();
+		setChangedAt(i, ++stamp);
+	}
+
+	/**
+	 * Starts a new epoch, in which old stamps mean nothing
+	 */
+	private void newEpoch() {
+		clearChangedAt();
+		stamp = 0;
+		epoch++;
+	}
+
+	/**
+	 * Returns the current change stamp of the world
+	 */
+	int stamp() {
+		return stamp;
+	}
+
+	/**
+	 * Returns the number of times the change stamps started over. Stamps from
+	 * different epochs cannot be compared.
+	 */
+	int epoch() {
+		return epoch;
+	}
+}
@@ -0,0 +1,63 @@
+package tests;
+
+import java.io.StringReader;
+import java.util.Arrays;
+import java.util.Random;
+
+import ast.Program;
+import interpret.Engine;
+import parse.ParserFactory;
+import simulator.Critter;
+import simulator.SimulatorImpl;
+
+/**
+ * This class contains tests that every engine runs a world the same way for
+ * the same seed, including programs whose optimized form could leave out
+ * subexpressions and updates that draw from random.
+ */
+public class EngineTest {
+	private static final String[] PROGRAMS = {
+			"random[4] = 0 --> mem[3] := random[100] forward;\n"
+					+ "random[3] = 1 --> left;\n"
+					+ "1 = 1 --> right;\n",
+			"random[5] * 0 = 0 and random[2] = 0 --> mem[9] := random[9] mod 1 forward;\n"
+					+ "random[3] = 1 or 1 = 1 --> mem[2] := random[7] / 0 left;\n",
+			"random[3] = 1 and 1 = 0 --> bud;\n"
+					+ "0 * random[9] = 0 --> mem[10] := random[50] right;\n"
+					+ "1 = 1 --> forward;\n" };
+
+	public static void main(String[] args) {
+		long seed = args.length > 0 ? Long.parseLong(args[0]) : 42;
+		for (String program : PROGRAMS) {
+			String expected = run(program, seed, Engine.INTERPRETER);
+			for (Engine e : Engine.values())
+				assert (run(program, seed, e).equals(expected)) : e + " differs from INTERPRETER for\n" + program;
+		}
+		System.out.println("Engines agree for seed " + seed);
+	}
+
+	/**
+	 * Returns the state of a world with seed {@code seed}, filled with critters
+	 * running {@code program}, after 100 steps run by engine {@code e}
+	 */
+	private static String run(String program, long seed, Engine e) {
+		SimulatorImpl sim = new SimulatorImpl(seed);
+		sim.setEngine(e);
+		Program p = ParserFactory.getParser().parse(new StringReader(program));
+		Random r = new Random(seed);
+		for (int i = 0; i < 200; i++) {
+			int col = r.nextInt(sim.getColumns());
+			int row = r.nextInt(sim.getRows());
+			if (sim.isInBounds(col, row) && sim.isEmpty(col, row))
+				sim.addCritter(col, row,
+						new Critter(p, "test", col, row, new int[] { 11, 1, 1, 1, 500, 0, 0, 1, 0, 0, 0 }, r.nextInt(6), sim));
+		}
+		sim.advanceTime(100);
+
+		StringBuilder sb = new StringBuilder();
+		for (Critter c : sim.getCritters())
+			sb.append(c.col()).append(',').append(c.row()).append(',').append(c.getDir())
+					.append(Arrays.toString(c.getMem())).append(';');
+		return sb.toString();
+	}
+}
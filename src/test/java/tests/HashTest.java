@@ -0,0 +1,52 @@
+package tests;
+
+import java.io.FileNotFoundException;
+import java.io.FileReader;
+import java.util.ArrayList;
+
+import ast.*;
+import parse.*;
+
+/**
+ * This class contains tests for the structural hashes of programs: hashes
+ * cached across mutations must match freshly computed ones, and two programs
+ * with the same hash must print the same way. Programs that print the same way
+ * may still differ, since operators are printed without the parentheses that
+ * group them.
+ */
+public class HashTest {
+	public static void main(String[] args) {
+		try {
+			FileReader fr = new FileReader(args.length > 0 ? args[0] : "test.txt");
+			Parser parser = ParserFactory.getParser();
+			Program p = parser.parse(fr);
+			for (int i = 0; i < 1000; i++) {
+				Program parent = p;
+				p = p.mutate();
+
+				boolean sameText = parent.toString().equals(p.toString());
+				boolean sameHash = parent.structuralHash() == p.structuralHash();
+				assert (sameText || !sameHash) : "hash disagrees with text:\n" + parent + "\n" + p;
+				assert (p.structuralHash() == rebuild(p).structuralHash()) : "stale hash:\n" + p;
+			}
+			System.out.println("Hashes consistent: " + Long.toHexString(p.structuralHash()));
+		} catch (FileNotFoundException e) {
+			System.out.println("File not found");
+		}
+	}
+
+	/**
+	 * Returns a copy of {@code p} built from copies of its nodes, which have no
+	 * cached hashes
+	 */
+	private static Program rebuild(Program p) {
+		Program copy = new ProgramImpl();
+		for (Rule r : p.getRules()) {
+			ArrayList<Update> updates = new ArrayList<Update>();
+			for (Update u : r.getUpdates())
+				updates.add(u.clone());
+			copy.add(new Rule(r.getCond().clone(), updates, (Command) r.getComm().clone()));
+		}
+		return copy;
+	}
+}
@@ -0,0 +1,37 @@
+package tests;
+
+import java.io.FileNotFoundException;
+import java.io.FileReader;
+
+import ast.*;
+import parse.*;
+
+/**
+ * This class contains tests for the cached sizes used by size() and nodeAt(),
+ * and for mutated programs sharing rules with the program they came from.
+ */
+public class SizeTest {
+	public static void main(String[] args) {
+		try {
+			FileReader fr = new FileReader(args.length > 0 ? args[0] : "test.txt");
+			Parser parser = ParserFactory.getParser();
+			Program p = parser.parse(fr);
+			for (int i = 0; i < 1000; i++) {
+				String before = p.toString();
+				Program parent = p;
+				p = p.mutate();
+				assert (parent.toString().equals(before)) : "mutation changed a shared rule";
+
+				// A fresh copy has no cached sizes, so it counts every node
+				Program fresh = p.clone();
+				assert (p.size() == fresh.size()) : p.size() + " != " + fresh.size();
+				for (int j = 0; j < p.size(); j++)
+					assert (p.nodeAt(j) != null);
+				assert (p.nodeAt(p.size()) == null);
+			}
+			System.out.println("Sizes consistent: " + p.size());
+		} catch (FileNotFoundException e) {
+			System.out.println("File not found");
+		}
+	}
+}